@@ -0,0 +1,25 @@
+package com.powerdms.elasticsearch.action.naturalsort.footprint;
+
+import org.elasticsearch.action.admin.indices.IndicesAction;
+import org.elasticsearch.client.IndicesAdminClient;
+
+public class NaturalSortFootprintAction extends IndicesAction<NaturalSortFootprintRequest, NaturalSortFootprintResponse, NaturalSortFootprintRequestBuilder> {
+
+    public static final NaturalSortFootprintAction INSTANCE = new NaturalSortFootprintAction();
+
+    public static final String NAME = "indices:admin/naturalsort/footprint";
+
+    private NaturalSortFootprintAction() {
+        super(NAME);
+    }
+
+    @Override
+    public NaturalSortFootprintResponse newResponse() {
+        return new NaturalSortFootprintResponse();
+    }
+
+    @Override
+    public NaturalSortFootprintRequestBuilder newRequestBuilder(IndicesAdminClient client) {
+        return new NaturalSortFootprintRequestBuilder(client);
+    }
+}
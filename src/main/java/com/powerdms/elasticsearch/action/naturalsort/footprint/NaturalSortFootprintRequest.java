@@ -0,0 +1,41 @@
+package com.powerdms.elasticsearch.action.naturalsort.footprint;
+
+import org.elasticsearch.action.support.broadcast.BroadcastOperationRequest;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+public class NaturalSortFootprintRequest extends BroadcastOperationRequest<NaturalSortFootprintRequest> {
+
+    private String[] fields = Strings.EMPTY_ARRAY;
+
+    NaturalSortFootprintRequest() {
+    }
+
+    public NaturalSortFootprintRequest(String... indices) {
+        super(indices);
+    }
+
+    public String[] fields() {
+        return fields;
+    }
+
+    public NaturalSortFootprintRequest fields(String... fields) {
+        this.fields = fields == null ? Strings.EMPTY_ARRAY : fields;
+        return this;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        fields = in.readStringArray();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeStringArray(fields);
+    }
+}
@@ -0,0 +1,25 @@
+package com.powerdms.elasticsearch.action.naturalsort.footprint;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.broadcast.BroadcastOperationRequestBuilder;
+import org.elasticsearch.client.IndicesAdminClient;
+
+public class NaturalSortFootprintRequestBuilder extends BroadcastOperationRequestBuilder<NaturalSortFootprintRequest, NaturalSortFootprintResponse, NaturalSortFootprintRequestBuilder, IndicesAdminClient> {
+
+    public NaturalSortFootprintRequestBuilder(IndicesAdminClient client) {
+        super(client, new NaturalSortFootprintRequest());
+    }
+
+    /**
+     * @param fields field name patterns to analyze, all naturalsort fields if not set
+     */
+    public NaturalSortFootprintRequestBuilder setFields(String... fields) {
+        request.fields(fields);
+        return this;
+    }
+
+    @Override
+    protected void doExecute(ActionListener<NaturalSortFootprintResponse> listener) {
+        client.execute(NaturalSortFootprintAction.INSTANCE, request, listener);
+    }
+}
@@ -0,0 +1,88 @@
+package com.powerdms.elasticsearch.action.naturalsort.footprint;
+
+import org.elasticsearch.action.ShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastOperationResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sort key statistics per index and field, summed over the segments of all shards.
+ */
+public class NaturalSortFootprintResponse extends BroadcastOperationResponse implements ToXContent {
+
+    private Map<String, Map<String, NaturalSortFootprintStats>> indices;
+
+    NaturalSortFootprintResponse() {
+    }
+
+    NaturalSortFootprintResponse(Map<String, Map<String, NaturalSortFootprintStats>> indices,
+                                 int totalShards, int successfulShards, int failedShards,
+                                 List<ShardOperationFailedException> shardFailures) {
+        super(totalShards, successfulShards, failedShards, shardFailures);
+        this.indices = indices;
+    }
+
+    /**
+     * @return statistics by index name and field name
+     */
+    public Map<String, Map<String, NaturalSortFootprintStats>> getIndices() {
+        return indices;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        indices = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            String index = in.readString();
+            int numFields = in.readVInt();
+            Map<String, NaturalSortFootprintStats> fields = new HashMap<>(numFields);
+            for (int j = 0; j < numFields; j++) {
+                String field = in.readString();
+                NaturalSortFootprintStats stats = new NaturalSortFootprintStats();
+                stats.readFrom(in);
+                fields.put(field, stats);
+            }
+            indices.put(index, fields);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(indices.size());
+        for (Map.Entry<String, Map<String, NaturalSortFootprintStats>> index : indices.entrySet()) {
+            out.writeString(index.getKey());
+            out.writeVInt(index.getValue().size());
+            for (Map.Entry<String, NaturalSortFootprintStats> field : index.getValue().entrySet()) {
+                out.writeString(field.getKey());
+                field.getValue().writeTo(out);
+            }
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("indices");
+        for (Map.Entry<String, Map<String, NaturalSortFootprintStats>> index : new TreeMap<>(indices).entrySet()) {
+            builder.startObject(index.getKey());
+            for (Map.Entry<String, NaturalSortFootprintStats> field : new TreeMap<>(index.getValue()).entrySet()) {
+                builder.startObject(field.getKey());
+                field.getValue().toXContent(builder, params);
+                builder.endObject();
+            }
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
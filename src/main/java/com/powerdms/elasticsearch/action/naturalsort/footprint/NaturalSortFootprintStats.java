@@ -0,0 +1,249 @@
+package com.powerdms.elasticsearch.action.naturalsort.footprint;
+
+import com.powerdms.elasticsearch.index.analysis.naturalsort.CollationFragmentCache;
+import com.powerdms.elasticsearch.index.analysis.naturalsort.NaturalSortKeyFilter;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+
+/**
+ * Size statistics of the natural sort keys of a field.
+ *
+ * Keys are decoded from their indexed form and analyzed on the primary collation level:
+ * zero padding is counted as the leading zeros of each digit run chunk, whitespace substitution
+ * as runs of three exclamation marks. Every such char costs one collation element, i.e. one char
+ * on each collation level of the key.
+ */
+public class NaturalSortFootprintStats implements Streamable, ToXContent {
+
+    private static final int NUM_BUCKETS = 16;
+
+    private long keys;
+
+    private long termBytes;
+
+    private long keyBytes;
+
+    private long primaryBytes;
+
+    private long minKeyLength = Long.MAX_VALUE;
+
+    private long maxKeyLength;
+
+    private long[] distribution = new long[NUM_BUCKETS];
+
+    private long truncated;
+
+    private long digitRuns;
+
+    private long paddingBytes;
+
+    private long whitespaceBytes;
+
+    private long digitRunBytes;
+
+    /**
+     * Add a single key.
+     *
+     * @param termLength   length of the indexed term in bytes
+     * @param key          decoded collation key
+     * @param digitWeights primary weights of the digits 0 to 9
+     * @param bangWeight   primary weight of the exclamation mark
+     */
+    public void add(int termLength, byte[] key, char[] digitWeights, char bangWeight) {
+        keys++;
+        termBytes += termLength;
+        keyBytes += key.length;
+        minKeyLength = Math.min(minKeyLength, key.length);
+        maxKeyLength = Math.max(maxKeyLength, key.length);
+        distribution[bucket(key.length)]++;
+        if (key.length >= NaturalSortKeyFilter.MAX_LENGTH) {
+            truncated++;
+        }
+        byte[][] levels = CollationFragmentCache.levels(key);
+        byte[] primary = levels[0];
+        primaryBytes += primary.length;
+        // each collation element has one char on each level
+        int elementBytes = 2 * levels.length;
+        int digitRun = 0;
+        int leadingZeros = 0;
+        int bangRun = 0;
+        for (int i = 0; i + 1 < primary.length; i += 2) {
+            char weight = (char) (((primary[i] & 0xff) << 8) | (primary[i + 1] & 0xff));
+            int digit = digit(weight, digitWeights);
+            if (digit >= 0) {
+                if (digitRun == 0) {
+                    digitRuns++;
+                    digitRunBytes += elementBytes;
+                }
+                if (digit == 0 && leadingZeros == digitRun) {
+                    leadingZeros++;
+                }
+                digitRun++;
+                if (digitRun == NaturalSortKeyFilter.MAX_NUM_DIGITS_IN_DIGIT_RUN) {
+                    paddingBytes += padding(digitRun, leadingZeros) * elementBytes;
+                    digitRun = 0;
+                    leadingZeros = 0;
+                }
+            } else if (digitRun > 0) {
+                paddingBytes += padding(digitRun, leadingZeros) * elementBytes;
+                digitRun = 0;
+                leadingZeros = 0;
+            }
+            if (weight == bangWeight) {
+                bangRun++;
+            } else {
+                whitespaceBytes += (bangRun / 3) * 3 * elementBytes;
+                bangRun = 0;
+            }
+        }
+        if (digitRun > 0) {
+            paddingBytes += padding(digitRun, leadingZeros) * elementBytes;
+        }
+        whitespaceBytes += (bangRun / 3) * 3 * elementBytes;
+    }
+
+    public void merge(NaturalSortFootprintStats other) {
+        keys += other.keys;
+        termBytes += other.termBytes;
+        keyBytes += other.keyBytes;
+        primaryBytes += other.primaryBytes;
+        minKeyLength = Math.min(minKeyLength, other.minKeyLength);
+        maxKeyLength = Math.max(maxKeyLength, other.maxKeyLength);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            distribution[i] += other.distribution[i];
+        }
+        truncated += other.truncated;
+        digitRuns += other.digitRuns;
+        paddingBytes += other.paddingBytes;
+        whitespaceBytes += other.whitespaceBytes;
+        digitRunBytes += other.digitRunBytes;
+    }
+
+    public long getKeys() {
+        return keys;
+    }
+
+    public long getTermBytes() {
+        return termBytes;
+    }
+
+    public long getKeyBytes() {
+        return keyBytes;
+    }
+
+    public long getTruncated() {
+        return truncated;
+    }
+
+    public long getPaddingBytes() {
+        return paddingBytes;
+    }
+
+    public long getWhitespaceBytes() {
+        return whitespaceBytes;
+    }
+
+    private static int bucket(int length) {
+        int bucket = 32 - Integer.numberOfLeadingZeros(length);
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+    private static int digit(char weight, char[] digitWeights) {
+        for (int i = 0; i < digitWeights.length; i++) {
+            if (digitWeights[i] == weight) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The last digit of a run is never padding, also not in a run of zeros.
+     */
+    private static int padding(int digitRun, int leadingZeros) {
+        return Math.min(leadingZeros, digitRun - 1);
+    }
+
+    private static double ratio(long part, long total) {
+        return total > 0 ? (double) part / total : 0.0d;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        keys = in.readVLong();
+        termBytes = in.readVLong();
+        keyBytes = in.readVLong();
+        primaryBytes = in.readVLong();
+        minKeyLength = in.readLong();
+        maxKeyLength = in.readVLong();
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            distribution[i] = in.readVLong();
+        }
+        truncated = in.readVLong();
+        digitRuns = in.readVLong();
+        paddingBytes = in.readVLong();
+        whitespaceBytes = in.readVLong();
+        digitRunBytes = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(keys);
+        out.writeVLong(termBytes);
+        out.writeVLong(keyBytes);
+        out.writeVLong(primaryBytes);
+        out.writeLong(minKeyLength);
+        out.writeVLong(maxKeyLength);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            out.writeVLong(distribution[i]);
+        }
+        out.writeVLong(truncated);
+        out.writeVLong(digitRuns);
+        out.writeVLong(paddingBytes);
+        out.writeVLong(whitespaceBytes);
+        out.writeVLong(digitRunBytes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        // digit runs with a length prefix instead of zero padding
+        long unpadded = keyBytes - paddingBytes + digitRunBytes;
+        // one exclamation mark per whitespace char
+        long singleSeparator = keyBytes - whitespaceBytes * 2 / 3;
+        builder.field("keys", keys)
+                .field("term_bytes", termBytes)
+                .field("key_bytes", keyBytes)
+                .field("min_key_length", keys > 0 ? minKeyLength : 0)
+                .field("max_key_length", maxKeyLength)
+                .field("avg_key_length", keys > 0 ? keyBytes / keys : 0);
+        builder.startObject("key_length_distribution");
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (distribution[i] > 0) {
+                builder.field(i < NUM_BUCKETS - 1 ? "<" + (1 << i) : ">=" + (1 << (i - 1)), distribution[i]);
+            }
+        }
+        builder.endObject();
+        builder.field("digit_runs", digitRuns)
+                .field("digit_padding_bytes", paddingBytes)
+                .field("digit_padding_ratio", ratio(paddingBytes, keyBytes))
+                .field("whitespace_bytes", whitespaceBytes)
+                .field("whitespace_ratio", ratio(whitespaceBytes, keyBytes))
+                .field("truncated", truncated)
+                .field("truncation_rate", ratio(truncated, keys))
+                .field("encoding_overhead_bytes", termBytes - keyBytes)
+                .field("encoding_overhead_ratio", ratio(termBytes - keyBytes, termBytes));
+        builder.startObject("projected")
+                .field("binary_terms", keyBytes)
+                .field("length_prefixed_digits", unpadded)
+                .field("single_whitespace_separator", singleSeparator)
+                .field("primary_strength", primaryBytes)
+                .field("length_prefixed_digits_and_single_separator", unpadded - whitespaceBytes * 2 / 3)
+                .endObject();
+        return builder;
+    }
+}
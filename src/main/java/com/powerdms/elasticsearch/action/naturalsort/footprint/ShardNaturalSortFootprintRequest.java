@@ -0,0 +1,37 @@
+package com.powerdms.elasticsearch.action.naturalsort.footprint;
+
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+
+class ShardNaturalSortFootprintRequest extends BroadcastShardOperationRequest {
+
+    private String[] fields;
+
+    ShardNaturalSortFootprintRequest() {
+    }
+
+    ShardNaturalSortFootprintRequest(ShardId shardId, NaturalSortFootprintRequest request) {
+        super(shardId, request);
+        this.fields = request.fields();
+    }
+
+    public String[] fields() {
+        return fields;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        fields = in.readStringArray();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeStringArray(fields);
+    }
+}
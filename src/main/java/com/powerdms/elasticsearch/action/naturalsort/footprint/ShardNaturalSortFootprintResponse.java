@@ -0,0 +1,50 @@
+package com.powerdms.elasticsearch.action.naturalsort.footprint;
+
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+class ShardNaturalSortFootprintResponse extends BroadcastShardOperationResponse {
+
+    private Map<String, NaturalSortFootprintStats> fields;
+
+    ShardNaturalSortFootprintResponse() {
+    }
+
+    ShardNaturalSortFootprintResponse(ShardId shardId, Map<String, NaturalSortFootprintStats> fields) {
+        super(shardId);
+        this.fields = fields;
+    }
+
+    public Map<String, NaturalSortFootprintStats> fields() {
+        return fields;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        fields = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            String field = in.readString();
+            NaturalSortFootprintStats stats = new NaturalSortFootprintStats();
+            stats.readFrom(in);
+            fields.put(field, stats);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(fields.size());
+        for (Map.Entry<String, NaturalSortFootprintStats> entry : fields.entrySet()) {
+            out.writeString(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+}
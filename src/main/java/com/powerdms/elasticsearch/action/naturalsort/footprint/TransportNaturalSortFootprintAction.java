@@ -0,0 +1,269 @@
+package com.powerdms.elasticsearch.action.naturalsort.footprint;
+
+import com.powerdms.elasticsearch.index.analysis.naturalsort.CollationFragmentCache;
+import com.powerdms.elasticsearch.index.analysis.naturalsort.NaturalSortKeyFilterFactory;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.util.IndexableBinaryStringTools;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ShardOperationFailedException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.DefaultShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.TransportBroadcastOperationAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.analysis.CustomAnalyzer;
+import org.elasticsearch.index.analysis.NamedAnalyzer;
+import org.elasticsearch.index.analysis.TokenFilterFactory;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Scans the terms of all fields analyzed by the naturalsort filter, one copy of each shard,
+ * the segments of a shard in parallel.
+ */
+public class TransportNaturalSortFootprintAction extends TransportBroadcastOperationAction<NaturalSortFootprintRequest, NaturalSortFootprintResponse, ShardNaturalSortFootprintRequest, ShardNaturalSortFootprintResponse> {
+
+    private final IndicesService indicesService;
+
+    @Inject
+    public TransportNaturalSortFootprintAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                               TransportService transportService, IndicesService indicesService,
+                                               ActionFilters actionFilters) {
+        super(settings, NaturalSortFootprintAction.NAME, threadPool, clusterService, transportService, actionFilters);
+        this.indicesService = indicesService;
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.MANAGEMENT;
+    }
+
+    @Override
+    protected NaturalSortFootprintRequest newRequest() {
+        return new NaturalSortFootprintRequest();
+    }
+
+    @Override
+    protected NaturalSortFootprintResponse newResponse(NaturalSortFootprintRequest request, AtomicReferenceArray shardsResponses, ClusterState clusterState) {
+        int successfulShards = 0;
+        int failedShards = 0;
+        List<ShardOperationFailedException> shardFailures = null;
+        Map<String, Map<String, NaturalSortFootprintStats>> indices = new HashMap<>();
+        for (int i = 0; i < shardsResponses.length(); i++) {
+            Object shardResponse = shardsResponses.get(i);
+            if (shardResponse == null) {
+                // simply ignore non active shards
+            } else if (shardResponse instanceof BroadcastShardOperationFailedException) {
+                failedShards++;
+                if (shardFailures == null) {
+                    shardFailures = new ArrayList<>();
+                }
+                shardFailures.add(new DefaultShardOperationFailedException((BroadcastShardOperationFailedException) shardResponse));
+            } else {
+                ShardNaturalSortFootprintResponse response = (ShardNaturalSortFootprintResponse) shardResponse;
+                Map<String, NaturalSortFootprintStats> fields = indices.get(response.getIndex());
+                if (fields == null) {
+                    fields = new HashMap<>();
+                    indices.put(response.getIndex(), fields);
+                }
+                merge(fields, response.fields());
+                successfulShards++;
+            }
+        }
+        return new NaturalSortFootprintResponse(indices, shardsResponses.length(), successfulShards, failedShards, shardFailures);
+    }
+
+    @Override
+    protected ShardNaturalSortFootprintRequest newShardRequest() {
+        return new ShardNaturalSortFootprintRequest();
+    }
+
+    @Override
+    protected ShardNaturalSortFootprintRequest newShardRequest(int numShards, ShardRouting shard, NaturalSortFootprintRequest request) {
+        return new ShardNaturalSortFootprintRequest(shard.shardId(), request);
+    }
+
+    @Override
+    protected ShardNaturalSortFootprintResponse newShardResponse() {
+        return new ShardNaturalSortFootprintResponse();
+    }
+
+    @Override
+    protected ShardNaturalSortFootprintResponse shardOperation(ShardNaturalSortFootprintRequest request) throws ElasticsearchException {
+        IndexService indexService = indicesService.indexServiceSafe(request.shardId().getIndex());
+        IndexShard indexShard = indexService.shardSafe(request.shardId().id());
+        final Map<String, char[]> fields = naturalSortFields(indexService.mapperService(), request.fields());
+        Engine.Searcher searcher = indexShard.acquireSearcher("naturalsort_footprint");
+        final AtomicBoolean aborted = new AtomicBoolean();
+        List<FutureTask<Map<String, NaturalSortFootprintStats>>> tasks = new ArrayList<>();
+        try {
+            for (final AtomicReaderContext context : searcher.reader().leaves()) {
+                FutureTask<Map<String, NaturalSortFootprintStats>> task = new FutureTask<>(new Callable<Map<String, NaturalSortFootprintStats>>() {
+                    @Override
+                    public Map<String, NaturalSortFootprintStats> call() throws Exception {
+                        if (aborted.get()) {
+                            return null;
+                        }
+                        return scan(context.reader(), fields);
+                    }
+                });
+                threadPool.executor(ThreadPool.Names.GENERIC).execute(task);
+                tasks.add(task);
+            }
+            Map<String, NaturalSortFootprintStats> stats = new HashMap<>();
+            for (FutureTask<Map<String, NaturalSortFootprintStats>> task : tasks) {
+                merge(stats, task.get());
+            }
+            return new ShardNaturalSortFootprintResponse(request.shardId(), stats);
+        } catch (Exception e) {
+            throw new ElasticsearchException("failed to scan natural sort keys of " + request.shardId(), e);
+        } finally {
+            // segment scans still read from the searcher, let them finish before it is released
+            aborted.set(true);
+            for (FutureTask<Map<String, NaturalSortFootprintStats>> task : tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    // already reported or superseded by the first failure
+                }
+            }
+            searcher.close();
+        }
+    }
+
+    @Override
+    protected GroupShardsIterator shards(ClusterState clusterState, NaturalSortFootprintRequest request, String[] concreteIndices) {
+        return clusterService.operationRouting().searchShards(clusterState, request.indices(), concreteIndices, null, null);
+    }
+
+    @Override
+    protected ClusterBlockException checkGlobalBlock(ClusterState state, NaturalSortFootprintRequest request) {
+        return state.blocks().globalBlockedException(ClusterBlockLevel.READ);
+    }
+
+    @Override
+    protected ClusterBlockException checkRequestBlock(ClusterState state, NaturalSortFootprintRequest request, String[] concreteIndices) {
+        return state.blocks().indicesBlockedException(ClusterBlockLevel.READ, concreteIndices);
+    }
+
+    private static Map<String, NaturalSortFootprintStats> scan(AtomicReader reader, Map<String, char[]> fields) throws IOException {
+        Map<String, NaturalSortFootprintStats> stats = new HashMap<>();
+        CharsRefBuilder chars = new CharsRefBuilder();
+        for (Map.Entry<String, char[]> field : fields.entrySet()) {
+            Terms terms = reader.terms(field.getKey());
+            if (terms == null) {
+                continue;
+            }
+            char[] weights = field.getValue();
+            char[] digitWeights = new char[10];
+            System.arraycopy(weights, 0, digitWeights, 0, 10);
+            NaturalSortFootprintStats fieldStats = new NaturalSortFootprintStats();
+            TermsEnum termsEnum = terms.iterator(null);
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                chars.copyUTF8Bytes(term);
+                int keyLength = IndexableBinaryStringTools.getDecodedLength(chars.chars(), 0, chars.length());
+                byte[] key = new byte[keyLength];
+                IndexableBinaryStringTools.decode(chars.chars(), 0, chars.length(), key, 0, keyLength);
+                fieldStats.add(term.length, key, digitWeights, weights[10]);
+            }
+            stats.put(field.getKey(), fieldStats);
+        }
+        return stats;
+    }
+
+    private static void merge(Map<String, NaturalSortFootprintStats> stats, Map<String, NaturalSortFootprintStats> other) {
+        for (Map.Entry<String, NaturalSortFootprintStats> entry : other.entrySet()) {
+            NaturalSortFootprintStats fieldStats = stats.get(entry.getKey());
+            if (fieldStats == null) {
+                stats.put(entry.getKey(), entry.getValue());
+            } else {
+                fieldStats.merge(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the primary weights of the digits 0 to 9 and of the exclamation mark, by field name
+     */
+    private static Map<String, char[]> naturalSortFields(MapperService mapperService, String[] patterns) {
+        Map<String, char[]> fields = new HashMap<>();
+        for (DocumentMapper documentMapper : mapperService.docMappers(false)) {
+            for (FieldMapper<?> fieldMapper : documentMapper.mappers()) {
+                String name = fieldMapper.names().indexName();
+                if (fields.containsKey(name) || (patterns.length > 0 && !Regex.simpleMatch(patterns, name))) {
+                    continue;
+                }
+                NaturalSortKeyFilterFactory filterFactory = naturalSortFilter(fieldMapper.indexAnalyzer());
+                if (filterFactory != null) {
+                    fields.put(name, weights(filterFactory.locale()));
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static NaturalSortKeyFilterFactory naturalSortFilter(Analyzer analyzer) {
+        if (analyzer instanceof NamedAnalyzer) {
+            analyzer = ((NamedAnalyzer) analyzer).analyzer();
+        }
+        if (analyzer instanceof CustomAnalyzer) {
+            for (TokenFilterFactory tokenFilter : ((CustomAnalyzer) analyzer).tokenFilters()) {
+                if (tokenFilter instanceof NaturalSortKeyFilterFactory) {
+                    return (NaturalSortKeyFilterFactory) tokenFilter;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static char[] weights(String locale) {
+        Collator collator = Collator.getInstance(new Locale(locale));
+        char[] weights = new char[11];
+        for (int i = 0; i < 10; i++) {
+            weights[i] = primaryWeight(collator, String.valueOf((char) ('0' + i)));
+        }
+        weights[10] = primaryWeight(collator, "!");
+        return weights;
+    }
+
+    private static char primaryWeight(Collator collator, String s) {
+        byte[] primary = CollationFragmentCache.levels(collator.getCollationKey(s).toByteArray())[0];
+        return primary.length < 2 ? 0 : (char) (((primary[0] & 0xff) << 8) | (primary[1] & 0xff));
+    }
+}
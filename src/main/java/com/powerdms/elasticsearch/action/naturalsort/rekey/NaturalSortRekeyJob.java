@@ -0,0 +1,458 @@
+package com.powerdms.elasticsearch.action.naturalsort.rekey;
+
+import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
+import org.apache.lucene.store.RateLimiter;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.AliasAction;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.indexing.IndexingStats;
+import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+
+/**
+ * Rebuilds the natural sort keys of an index by copying all documents into a new index.
+ *
+ * The new index is created with the settings and mappings of the source index, overlaid with
+ * the given settings (e.g. a new naturalsort filter locale), so the sort sub-fields are analyzed
+ * again while the documents are copied. Shards of the source index are scrolled in parallel by
+ * a configurable number of workers, bulk requests are throttled by a byte rate limit.
+ * Documents keep their versions, as external versions in the target index.
+ * At the end, the alias is moved from the source index to the new index, with its filter and routing,
+ * unless documents failed to copy and failures are not explicitly allowed. Writes to the source index
+ * are blocked while an alias is moved, otherwise the alias is only moved if the source index was not
+ * written to during the copy.
+ */
+public class NaturalSortRekeyJob implements Runnable, ToXContent {
+
+    private final static ESLogger logger = Loggers.getLogger(NaturalSortRekeyJob.class);
+
+    public final static int DEFAULT_WORKERS = 4;
+
+    public final static int DEFAULT_SIZE = 500;
+
+    public final static TimeValue DEFAULT_SCROLL = TimeValue.timeValueMinutes(5);
+
+    public enum State {
+        PENDING, COPYING, SWITCHING, DONE, FAILED
+    }
+
+    private final String id;
+
+    private final Settings settings;
+
+    private final Client client;
+
+    private final String source;
+
+    private final String target;
+
+    private String alias;
+
+    private Settings targetSettings = ImmutableSettings.EMPTY;
+
+    private int workers = DEFAULT_WORKERS;
+
+    private int size = DEFAULT_SIZE;
+
+    private TimeValue scroll = DEFAULT_SCROLL;
+
+    private ByteSizeValue maxBytesPerSec;
+
+    private boolean allowFailures;
+
+    private boolean blockWrites = true;
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicInteger shardsDone = new AtomicInteger();
+
+    private volatile int numberOfShards;
+
+    private volatile State state = State.PENDING;
+
+    private volatile String failure;
+
+    private volatile long startTime;
+
+    private volatile long endTime;
+
+    /**
+     * @param id       job id
+     * @param settings node settings
+     * @param client   client
+     * @param source   index to read documents from
+     * @param target   index to create and write documents to
+     */
+    public NaturalSortRekeyJob(String id, Settings settings, Client client, String source, String target) {
+        this.id = id;
+        this.settings = settings;
+        this.client = client;
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * @param alias alias to move from the source index to the target index when all documents are copied
+     */
+    public NaturalSortRekeyJob alias(String alias) {
+        this.alias = alias;
+        return this;
+    }
+
+    /**
+     * @param targetSettings settings overriding the settings of the source index in the target index
+     */
+    public NaturalSortRekeyJob targetSettings(Settings targetSettings) {
+        this.targetSettings = targetSettings;
+        return this;
+    }
+
+    /**
+     * @param workers number of shards copied in parallel
+     */
+    public NaturalSortRekeyJob workers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    /**
+     * @param size number of documents per shard and scroll request
+     */
+    public NaturalSortRekeyJob size(int size) {
+        this.size = size;
+        return this;
+    }
+
+    public NaturalSortRekeyJob scroll(TimeValue scroll) {
+        this.scroll = scroll;
+        return this;
+    }
+
+    /**
+     * @param maxBytesPerSec maximum bulk volume per second over all workers, or null for no limit
+     */
+    public NaturalSortRekeyJob maxBytesPerSec(ByteSizeValue maxBytesPerSec) {
+        this.maxBytesPerSec = maxBytesPerSec;
+        return this;
+    }
+
+    /**
+     * @param allowFailures move the alias and finish the job even if documents failed to copy
+     */
+    public NaturalSortRekeyJob allowFailures(boolean allowFailures) {
+        this.allowFailures = allowFailures;
+        return this;
+    }
+
+    /**
+     * @param blockWrites block writes to the source index while documents are copied, only if an alias is moved.
+     *                    Without the block, the alias is only moved if the source index was not written to.
+     */
+    public NaturalSortRekeyJob blockWrites(boolean blockWrites) {
+        this.blockWrites = blockWrites;
+        return this;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * @return true if the job is done or failed
+     */
+    public boolean finished() {
+        return endTime > 0;
+    }
+
+    /**
+     * @return time the job finished in millis, or 0 if it is still running
+     */
+    public long endTime() {
+        return endTime;
+    }
+
+    public String failure() {
+        return failure;
+    }
+
+    public long total() {
+        return total.get();
+    }
+
+    public long processed() {
+        return processed.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    @Override
+    public void run() {
+        startTime = System.currentTimeMillis();
+        boolean blocked = false;
+        try {
+            IndexMetaData metaData = client.admin().cluster().prepareState().setIndices(source)
+                    .execute().actionGet().getState().metaData().index(source);
+            if (metaData == null) {
+                throw new IndexMissingException(new Index(source));
+            }
+            createTarget(metaData);
+            if (alias != null && blockWrites && !metaData.settings().getAsBoolean(IndexMetaData.SETTING_BLOCKS_WRITE, false)) {
+                // writes after the scan of a shard started would not be copied
+                setWriteBlock(true);
+                blocked = true;
+            }
+            long writes = writes();
+            state = State.COPYING;
+            copy(metaData.numberOfShards());
+            client.admin().indices().prepareRefresh(target).execute().actionGet();
+            if (failed.get() > 0 && !allowFailures) {
+                // the target index is incomplete, keep the alias on the source index
+                fail(failed.get() + " documents failed to copy, alias not switched");
+                return;
+            }
+            if (alias != null) {
+                if (writes() != writes) {
+                    fail("source index was written to during the copy, alias not switched");
+                    return;
+                }
+                state = State.SWITCHING;
+                IndicesAliasesRequestBuilder aliases = client.admin().indices().prepareAliases();
+                AliasMetaData aliasMetaData = metaData.aliases().get(alias);
+                AliasAction addAlias = new AliasAction(AliasAction.Type.ADD, target, alias);
+                if (aliasMetaData != null) {
+                    // keep filter and routing of the alias
+                    if (aliasMetaData.filter() != null) {
+                        addAlias.filter(aliasMetaData.filter().string());
+                    }
+                    addAlias.indexRouting(aliasMetaData.indexRouting());
+                    addAlias.searchRouting(aliasMetaData.searchRouting());
+                    aliases.removeAlias(source, alias);
+                }
+                aliases.addAliasAction(addAlias);
+                aliases.execute().actionGet();
+                // the source index stays read-only, writes go through the alias to the target index
+                blocked = false;
+            }
+            state = State.DONE;
+            logger.info("rekey [{}] of [{}] into [{}] done, {} docs copied, {} failed",
+                    id, source, target, processed.get(), failed.get());
+        } catch (Throwable t) {
+            failure = ExceptionsHelper.detailedMessage(t);
+            state = State.FAILED;
+            logger.error("rekey [{}] of [{}] into [{}] failed", t, id, source, target);
+        } finally {
+            if (blocked) {
+                try {
+                    setWriteBlock(false);
+                } catch (Throwable t) {
+                    logger.error("rekey [{}] failed to remove the write block of [{}]", t, id, source);
+                }
+            }
+            endTime = System.currentTimeMillis();
+        }
+    }
+
+    private void fail(String reason) {
+        failure = reason;
+        state = State.FAILED;
+        logger.warn("rekey [{}] of [{}] into [{}] failed: {}, {} docs copied, {} failed",
+                id, source, target, reason, processed.get(), failed.get());
+    }
+
+    private void setWriteBlock(boolean block) {
+        client.admin().indices().prepareUpdateSettings(source)
+                .setSettings(ImmutableSettings.settingsBuilder().put(IndexMetaData.SETTING_BLOCKS_WRITE, block).build())
+                .execute().actionGet();
+    }
+
+    /**
+     * @return number of index and delete operations on the primaries of the source index
+     */
+    private long writes() {
+        IndexingStats.Stats indexing = client.admin().indices().prepareStats(source).clear().setIndexing(true)
+                .execute().actionGet().getPrimaries().getIndexing().getTotal();
+        return indexing.getIndexCount() + indexing.getDeleteCount();
+    }
+
+    private void createTarget(IndexMetaData metaData) throws IOException {
+        ImmutableSettings.Builder indexSettings = ImmutableSettings.settingsBuilder()
+                .put(metaData.settings());
+        // generated by the cluster for every new index
+        indexSettings.remove(IndexMetaData.SETTING_UUID);
+        indexSettings.remove(IndexMetaData.SETTING_VERSION_CREATED);
+        indexSettings.remove(IndexMetaData.SETTING_CREATION_DATE);
+        // the copy writes to the target index
+        indexSettings.remove(IndexMetaData.SETTING_BLOCKS_WRITE);
+        indexSettings.put(targetSettings);
+        CreateIndexRequestBuilder createIndex = client.admin().indices().prepareCreate(target)
+                .setSettings(indexSettings.build());
+        for (ObjectObjectCursor<String, MappingMetaData> cursor : metaData.mappings()) {
+            createIndex.addMapping(cursor.key, cursor.value.source().string());
+        }
+        createIndex.execute().actionGet();
+        client.admin().cluster().prepareHealth(target).setWaitForYellowStatus().execute().actionGet();
+    }
+
+    private void copy(final int numberOfShards) throws Exception {
+        this.numberOfShards = numberOfShards;
+        final RateLimiter rateLimiter = maxBytesPerSec != null && maxBytesPerSec.bytes() > 0 ?
+                new RateLimiter.SimpleRateLimiter(maxBytesPerSec.mbFrac()) : null;
+        final AtomicInteger nextShard = new AtomicInteger();
+        int threads = Math.max(1, Math.min(workers, numberOfShards));
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                EsExecutors.daemonThreadFactory(settings, "naturalsort_rekey"));
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        int shard;
+                        while ((shard = nextShard.getAndIncrement()) < numberOfShards) {
+                            copyShard(shard, rateLimiter);
+                            shardsDone.incrementAndGet();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void copyShard(int shard, RateLimiter rateLimiter) throws Exception {
+        SearchResponse response = client.prepareSearch(source)
+                .setSearchType(SearchType.SCAN)
+                .setScroll(scroll)
+                .setPreference("_shards:" + shard)
+                .setQuery(matchAllQuery())
+                .setSize(size)
+                .setVersion(true)
+                .addFields("_source", "_routing", "_parent")
+                .execute().actionGet();
+        total.addAndGet(response.getHits().getTotalHits());
+        String scrollId = response.getScrollId();
+        try {
+            while (true) {
+                response = client.prepareSearchScroll(scrollId).setScroll(scroll).execute().actionGet();
+                scrollId = response.getScrollId();
+                SearchHit[] hits = response.getHits().getHits();
+                if (hits.length == 0) {
+                    break;
+                }
+                BulkRequestBuilder bulk = client.prepareBulk();
+                for (SearchHit hit : hits) {
+                    IndexRequestBuilder index = client.prepareIndex(target, hit.getType(), hit.getId())
+                            .setSource(hit.sourceRef())
+                            .setVersion(hit.getVersion())
+                            .setVersionType(VersionType.EXTERNAL);
+                    SearchHitField routing = hit.field("_routing");
+                    if (routing != null) {
+                        index.setRouting(routing.getValue().toString());
+                    }
+                    SearchHitField parent = hit.field("_parent");
+                    if (parent != null) {
+                        index.setParent(parent.getValue().toString());
+                    }
+                    bulk.add(index);
+                }
+                BulkResponse bulkResponse = bulk.execute().actionGet();
+                int failures = 0;
+                for (BulkItemResponse item : bulkResponse) {
+                    if (item.isFailed()) {
+                        failures++;
+                        logger.warn("rekey [{}] failed to copy [{}]/[{}]: {}",
+                                id, item.getType(), item.getId(), item.getFailureMessage());
+                    }
+                }
+                failed.addAndGet(failures);
+                processed.addAndGet(hits.length - failures);
+                if (rateLimiter != null) {
+                    rateLimiter.pause(bulk.request().estimatedSizeInBytes());
+                }
+            }
+        } finally {
+            client.prepareClearScroll().addScrollId(scrollId).execute().actionGet();
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        long took = (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+        builder.startObject()
+                .field("id", id)
+                .field("state", state.name().toLowerCase(Locale.ROOT))
+                .field("source", source)
+                .field("target", target);
+        if (alias != null) {
+            builder.field("alias", alias);
+        }
+        builder.field("workers", workers)
+                .field("allow_failures", allowFailures)
+                .field("block_writes", blockWrites)
+                .field("shards", numberOfShards)
+                .field("shards_done", shardsDone.get())
+                .field("total", total.get())
+                .field("processed", processed.get())
+                .field("failed", failed.get());
+        if (startTime > 0) {
+            builder.field("took_in_millis", took)
+                    .field("docs_per_second", took > 0 ? processed.get() * 1000L / took : 0L);
+        }
+        if (failure != null) {
+            builder.field("failure", failure);
+        }
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,132 @@
+package com.powerdms.elasticsearch.action.naturalsort.scroll;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Base64;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The last emitted natural sort key and uid of each shard.
+ *
+ * The cursor is stateless: it is handed to the client as an opaque string and sent back with the
+ * next page request. Shards without a position start at the first key.
+ */
+public class NaturalSortCursor {
+
+    private final Map<ShardId, Position> positions;
+
+    public NaturalSortCursor() {
+        this(new HashMap<ShardId, Position>());
+    }
+
+    private NaturalSortCursor(Map<ShardId, Position> positions) {
+        this.positions = positions;
+    }
+
+    public Position get(ShardId shardId) {
+        return positions.get(shardId);
+    }
+
+    public void put(ShardId shardId, Position position) {
+        positions.put(shardId, position);
+    }
+
+    public String encode() throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        out.writeVInt(positions.size());
+        for (Map.Entry<ShardId, Position> entry : positions.entrySet()) {
+            entry.getKey().writeTo(out);
+            entry.getValue().writeTo(out);
+        }
+        return Base64.encodeBytes(out.bytes().toBytes(), Base64.URL_SAFE);
+    }
+
+    /**
+     * @param cursor encoded cursor, or null for the first page
+     */
+    public static NaturalSortCursor decode(String cursor) throws IOException {
+        if (cursor == null || cursor.isEmpty()) {
+            return new NaturalSortCursor();
+        }
+        StreamInput in = new BytesStreamInput(new BytesArray(Base64.decode(cursor, Base64.URL_SAFE)));
+        int size = in.readVInt();
+        Map<ShardId, Position> positions = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            ShardId shardId = ShardId.readShardId(in);
+            positions.put(shardId, Position.readPosition(in));
+        }
+        return new NaturalSortCursor(positions);
+    }
+
+    /**
+     * Position within a shard: all documents up to this key and uid have been emitted. A null key
+     * stands for the documents without a key, which follow after the last key. An exhausted shard
+     * has no documents left and is not asked again.
+     */
+    public static class Position implements Streamable {
+
+        private BytesRef key;
+
+        private String uid;
+
+        private boolean exhausted;
+
+        Position() {
+        }
+
+        public Position(BytesRef key, String uid) {
+            this.key = key;
+            this.uid = uid;
+        }
+
+        public static Position exhausted() {
+            Position position = new Position();
+            position.exhausted = true;
+            return position;
+        }
+
+        public BytesRef key() {
+            return key;
+        }
+
+        public String uid() {
+            return uid;
+        }
+
+        public boolean isExhausted() {
+            return exhausted;
+        }
+
+        public static Position readPosition(StreamInput in) throws IOException {
+            Position position = new Position();
+            position.readFrom(in);
+            return position;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            exhausted = in.readBoolean();
+            key = in.readBoolean() ? in.readBytesRef() : null;
+            uid = in.readOptionalString();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeBoolean(exhausted);
+            out.writeBoolean(key != null);
+            if (key != null) {
+                out.writeBytesRef(key);
+            }
+            out.writeOptionalString(uid);
+        }
+    }
+}
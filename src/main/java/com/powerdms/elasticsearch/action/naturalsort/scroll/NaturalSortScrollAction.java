@@ -0,0 +1,25 @@
+package com.powerdms.elasticsearch.action.naturalsort.scroll;
+
+import org.elasticsearch.action.ClientAction;
+import org.elasticsearch.client.Client;
+
+public class NaturalSortScrollAction extends ClientAction<NaturalSortScrollRequest, NaturalSortScrollResponse, NaturalSortScrollRequestBuilder> {
+
+    public static final NaturalSortScrollAction INSTANCE = new NaturalSortScrollAction();
+
+    public static final String NAME = "indices:data/read/naturalsort/scroll";
+
+    private NaturalSortScrollAction() {
+        super(NAME);
+    }
+
+    @Override
+    public NaturalSortScrollResponse newResponse() {
+        return new NaturalSortScrollResponse();
+    }
+
+    @Override
+    public NaturalSortScrollRequestBuilder newRequestBuilder(Client client) {
+        return new NaturalSortScrollRequestBuilder(client);
+    }
+}
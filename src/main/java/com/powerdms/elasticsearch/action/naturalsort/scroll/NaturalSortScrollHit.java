@@ -0,0 +1,153 @@
+package com.powerdms.elasticsearch.action.naturalsort.scroll;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+
+/**
+ * A document with its natural sort key, ordered by key, then by uid. Documents without a key
+ * come after all documents with a key.
+ */
+public class NaturalSortScrollHit implements Streamable, ToXContent, Comparable<NaturalSortScrollHit> {
+
+    private ShardId shardId;
+
+    private BytesRef key;
+
+    private String type;
+
+    private String id;
+
+    private String routing;
+
+    private BytesReference source;
+
+    NaturalSortScrollHit() {
+    }
+
+    NaturalSortScrollHit(ShardId shardId, BytesRef key, String type, String id, String routing) {
+        this.shardId = shardId;
+        this.key = key;
+        this.type = type;
+        this.id = id;
+        this.routing = routing;
+    }
+
+    public ShardId getShardId() {
+        return shardId;
+    }
+
+    public String getIndex() {
+        return shardId.getIndex();
+    }
+
+    /**
+     * @return natural sort key, or null if the document has no value in the sort field
+     */
+    public BytesRef getKey() {
+        return key;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUid() {
+        return Uid.createUid(type, id);
+    }
+
+    public String getRouting() {
+        return routing;
+    }
+
+    public BytesReference getSource() {
+        return source;
+    }
+
+    void source(BytesReference source) {
+        this.source = source;
+    }
+
+    public String getSourceAsString() {
+        return source == null ? null : source.toUtf8();
+    }
+
+    NaturalSortCursor.Position position() {
+        return new NaturalSortCursor.Position(key, getUid());
+    }
+
+    @Override
+    public int compareTo(NaturalSortScrollHit other) {
+        int cmp;
+        if (key == null || other.key == null) {
+            cmp = key == null ? (other.key == null ? 0 : 1) : -1;
+        } else {
+            cmp = key.compareTo(other.key);
+        }
+        if (cmp == 0) {
+            // byte order of the uid terms
+            cmp = new BytesRef(getUid()).compareTo(new BytesRef(other.getUid()));
+        }
+        if (cmp == 0) {
+            cmp = getIndex().compareTo(other.getIndex());
+        }
+        return cmp;
+    }
+
+    public static NaturalSortScrollHit readHit(StreamInput in) throws IOException {
+        NaturalSortScrollHit hit = new NaturalSortScrollHit();
+        hit.readFrom(in);
+        return hit;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        shardId = ShardId.readShardId(in);
+        key = in.readBoolean() ? in.readBytesRef() : null;
+        type = in.readString();
+        id = in.readString();
+        routing = in.readOptionalString();
+        source = in.readBoolean() ? in.readBytesReference() : null;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        shardId.writeTo(out);
+        out.writeBoolean(key != null);
+        if (key != null) {
+            out.writeBytesRef(key);
+        }
+        out.writeString(type);
+        out.writeString(id);
+        out.writeOptionalString(routing);
+        out.writeBoolean(source != null);
+        if (source != null) {
+            out.writeBytesReference(source);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject()
+                .field("_index", getIndex())
+                .field("_type", type)
+                .field("_id", id);
+        if (source != null) {
+            builder.rawField("_source", source);
+        }
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,31 @@
+package com.powerdms.elasticsearch.action.naturalsort.scroll;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.rest.RestStatus;
+
+/**
+ * A page could not be read from all shards. Advancing the cursor of the other shards would return
+ * the documents of the missing shards out of order later on, so the page fails as a whole and can
+ * be retried with the same cursor.
+ */
+public class NaturalSortScrollPageException extends ElasticsearchException {
+
+    private final String cursor;
+
+    public NaturalSortScrollPageException(String msg, String cursor) {
+        super(msg);
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return cursor of the failed page, to retry it
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    @Override
+    public RestStatus status() {
+        return RestStatus.SERVICE_UNAVAILABLE;
+    }
+}
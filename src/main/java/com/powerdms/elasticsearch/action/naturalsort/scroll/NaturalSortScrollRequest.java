@@ -0,0 +1,133 @@
+package com.powerdms.elasticsearch.action.naturalsort.scroll;
+
+import org.elasticsearch.ElasticsearchGenerationException;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.broadcast.BroadcastOperationRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.query.QueryBuilder;
+
+import java.io.IOException;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+public class NaturalSortScrollRequest extends BroadcastOperationRequest<NaturalSortScrollRequest> {
+
+    public static final int DEFAULT_SIZE = 10;
+
+    private String field;
+
+    private int size = DEFAULT_SIZE;
+
+    private BytesReference source;
+
+    private String cursor;
+
+    NaturalSortScrollRequest() {
+    }
+
+    public NaturalSortScrollRequest(String... indices) {
+        super(indices);
+    }
+
+    /**
+     * @param field field analyzed by the naturalsort filter, e.g. <code>title.sort</code>
+     */
+    public NaturalSortScrollRequest field(String field) {
+        this.field = field;
+        return this;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    /**
+     * @param size number of hits per page
+     */
+    public NaturalSortScrollRequest size(int size) {
+        this.size = size;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param source query source, e.g. <code>{ "query" : { ... } }</code>, or null for all documents
+     */
+    public NaturalSortScrollRequest source(BytesReference source) {
+        this.source = source;
+        return this;
+    }
+
+    public BytesReference source() {
+        return source;
+    }
+
+    public NaturalSortScrollRequest query(QueryBuilder query) {
+        if (query == null) {
+            this.source = null;
+            return this;
+        }
+        try {
+            this.source = jsonBuilder().startObject().field("query", query).endObject().bytes();
+        } catch (IOException e) {
+            throw new ElasticsearchGenerationException("failed to build query source", e);
+        }
+        return this;
+    }
+
+    /**
+     * @param cursor cursor of the previous page, or null for the first page
+     */
+    public NaturalSortScrollRequest cursor(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    public String cursor() {
+        return cursor;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = super.validate();
+        if (field == null) {
+            validationException = addValidationError("field is missing", validationException);
+        }
+        if (size <= 0) {
+            validationException = addValidationError("size must be positive", validationException);
+        }
+        try {
+            NaturalSortCursor.decode(cursor);
+        } catch (Exception e) {
+            validationException = addValidationError("invalid cursor", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        field = in.readString();
+        size = in.readVInt();
+        source = in.readBoolean() ? in.readBytesReference() : null;
+        cursor = in.readOptionalString();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(field);
+        out.writeVInt(size);
+        out.writeBoolean(source != null);
+        if (source != null) {
+            out.writeBytesReference(source);
+        }
+        out.writeOptionalString(cursor);
+    }
+}
@@ -0,0 +1,44 @@
+package com.powerdms.elasticsearch.action.naturalsort.scroll;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.broadcast.BroadcastOperationRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.index.query.QueryBuilder;
+
+public class NaturalSortScrollRequestBuilder extends BroadcastOperationRequestBuilder<NaturalSortScrollRequest, NaturalSortScrollResponse, NaturalSortScrollRequestBuilder, Client> {
+
+    public NaturalSortScrollRequestBuilder(Client client) {
+        super(client, new NaturalSortScrollRequest());
+    }
+
+    public NaturalSortScrollRequestBuilder setField(String field) {
+        request.field(field);
+        return this;
+    }
+
+    public NaturalSortScrollRequestBuilder setSize(int size) {
+        request.size(size);
+        return this;
+    }
+
+    public NaturalSortScrollRequestBuilder setQuery(QueryBuilder query) {
+        request.query(query);
+        return this;
+    }
+
+    public NaturalSortScrollRequestBuilder setSource(BytesReference source) {
+        request.source(source);
+        return this;
+    }
+
+    public NaturalSortScrollRequestBuilder setCursor(String cursor) {
+        request.cursor(cursor);
+        return this;
+    }
+
+    @Override
+    protected void doExecute(ActionListener<NaturalSortScrollResponse> listener) {
+        client.execute(NaturalSortScrollAction.INSTANCE, request, listener);
+    }
+}
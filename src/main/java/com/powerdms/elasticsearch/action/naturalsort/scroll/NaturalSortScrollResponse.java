@@ -0,0 +1,76 @@
+package com.powerdms.elasticsearch.action.naturalsort.scroll;
+
+import org.elasticsearch.action.ShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastOperationResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of documents in natural sort order, and the cursor for the next page.
+ */
+public class NaturalSortScrollResponse extends BroadcastOperationResponse implements ToXContent {
+
+    private List<NaturalSortScrollHit> hits;
+
+    private String cursor;
+
+    NaturalSortScrollResponse() {
+    }
+
+    NaturalSortScrollResponse(List<NaturalSortScrollHit> hits, String cursor,
+                              int totalShards, int successfulShards, int failedShards,
+                              List<ShardOperationFailedException> shardFailures) {
+        super(totalShards, successfulShards, failedShards, shardFailures);
+        this.hits = hits;
+        this.cursor = cursor;
+    }
+
+    public List<NaturalSortScrollHit> getHits() {
+        return hits;
+    }
+
+    /**
+     * @return cursor for the next page
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hits.add(NaturalSortScrollHit.readHit(in));
+        }
+        cursor = in.readString();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(hits.size());
+        for (NaturalSortScrollHit hit : hits) {
+            hit.writeTo(out);
+        }
+        out.writeString(cursor);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("cursor", cursor);
+        builder.startArray("hits");
+        for (NaturalSortScrollHit hit : hits) {
+            hit.toXContent(builder, params);
+        }
+        builder.endArray();
+        return builder;
+    }
+}
@@ -0,0 +1,71 @@
+package com.powerdms.elasticsearch.action.naturalsort.scroll;
+
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+
+class ShardNaturalSortScrollRequest extends BroadcastShardOperationRequest {
+
+    private String field;
+
+    private int size;
+
+    private BytesReference source;
+
+    private NaturalSortCursor.Position position;
+
+    ShardNaturalSortScrollRequest() {
+    }
+
+    ShardNaturalSortScrollRequest(ShardId shardId, NaturalSortScrollRequest request, NaturalSortCursor.Position position) {
+        super(shardId, request);
+        this.field = request.field();
+        this.size = request.size();
+        this.source = request.source();
+        this.position = position;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public BytesReference source() {
+        return source;
+    }
+
+    public NaturalSortCursor.Position position() {
+        return position;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        field = in.readString();
+        size = in.readVInt();
+        source = in.readBoolean() ? in.readBytesReference() : null;
+        position = in.readBoolean() ? NaturalSortCursor.Position.readPosition(in) : null;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(field);
+        out.writeVInt(size);
+        out.writeBoolean(source != null);
+        if (source != null) {
+            out.writeBytesReference(source);
+        }
+        out.writeBoolean(position != null);
+        if (position != null) {
+            position.writeTo(out);
+        }
+    }
+}
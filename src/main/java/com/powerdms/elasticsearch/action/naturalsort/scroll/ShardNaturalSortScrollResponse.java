@@ -0,0 +1,46 @@
+package com.powerdms.elasticsearch.action.naturalsort.scroll;
+
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+class ShardNaturalSortScrollResponse extends BroadcastShardOperationResponse {
+
+    private List<NaturalSortScrollHit> hits;
+
+    ShardNaturalSortScrollResponse() {
+    }
+
+    ShardNaturalSortScrollResponse(ShardId shardId, List<NaturalSortScrollHit> hits) {
+        super(shardId);
+        this.hits = hits;
+    }
+
+    public List<NaturalSortScrollHit> hits() {
+        return hits;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hits.add(NaturalSortScrollHit.readHit(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(hits.size());
+        for (NaturalSortScrollHit hit : hits) {
+            hit.writeTo(out);
+        }
+    }
+}
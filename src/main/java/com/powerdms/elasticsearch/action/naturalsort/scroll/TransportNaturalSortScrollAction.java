@@ -0,0 +1,525 @@
+package com.powerdms.elasticsearch.action.naturalsort.scroll;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.get.TransportMultiGetAction;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.TransportBroadcastOperationAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.docset.DocIdSets;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.fieldvisitor.JustUidFieldsVisitor;
+import org.elasticsearch.index.fieldvisitor.UidAndRoutingFieldsVisitor;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.index.search.nested.NonNestedDocsFilter;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Reads documents in natural sort order, page by page.
+ *
+ * Each shard seeks the terms dictionary of the sort field to the key of its cursor position and
+ * walks the terms in order until a page is filled. Documents with the same key are ordered by
+ * uid, in the byte order of the uid terms. For each key, the shard either reads the stored uid of
+ * every document with the key, or walks the uid terms from the cursor, whichever is estimated to
+ * be cheaper. Documents without a key follow after the last key, ordered by uid, and are found
+ * by walking the uid terms from the cursor. Shards only return keys, uids and routings. The
+ * coordinating node merges the shard pages, advances the cursor of each shard to the last of its
+ * hits that made it into the merged page, and then fetches the sources of the merged page only.
+ * A shard that returned less than a page, all of it emitted, is marked as exhausted in the cursor
+ * and not asked again. If a shard fails or is not available, the page fails as a whole and the
+ * cursor does not advance.
+ */
+public class TransportNaturalSortScrollAction extends TransportBroadcastOperationAction<NaturalSortScrollRequest, NaturalSortScrollResponse, ShardNaturalSortScrollRequest, ShardNaturalSortScrollResponse> {
+
+    private final IndicesService indicesService;
+
+    private final TransportMultiGetAction multiGetAction;
+
+    @Inject
+    public TransportNaturalSortScrollAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                            TransportService transportService, IndicesService indicesService,
+                                            TransportMultiGetAction multiGetAction, ActionFilters actionFilters) {
+        super(settings, NaturalSortScrollAction.NAME, threadPool, clusterService, transportService, actionFilters);
+        this.indicesService = indicesService;
+        this.multiGetAction = multiGetAction;
+    }
+
+    @Override
+    protected void doExecute(final NaturalSortScrollRequest request, final ActionListener<NaturalSortScrollResponse> listener) {
+        super.doExecute(request, new ActionListener<NaturalSortScrollResponse>() {
+            @Override
+            public void onResponse(NaturalSortScrollResponse response) {
+                fetchSources(request, response, listener);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    /**
+     * Second phase: load the sources of the merged page. Documents deleted since the first phase
+     * are dropped from the page, the cursor has moved past them anyway.
+     */
+    private void fetchSources(final NaturalSortScrollRequest request, final NaturalSortScrollResponse response,
+                              final ActionListener<NaturalSortScrollResponse> listener) {
+        if (response.getHits().isEmpty()) {
+            listener.onResponse(response);
+            return;
+        }
+        MultiGetRequest multiGetRequest = new MultiGetRequest().realtime(false);
+        for (NaturalSortScrollHit hit : response.getHits()) {
+            multiGetRequest.add(new MultiGetRequest.Item(hit.getIndex(), hit.getType(), hit.getId()).routing(hit.getRouting()));
+        }
+        multiGetAction.execute(multiGetRequest, new ActionListener<MultiGetResponse>() {
+            @Override
+            public void onResponse(MultiGetResponse multiGetResponse) {
+                MultiGetItemResponse[] items = multiGetResponse.getResponses();
+                Iterator<NaturalSortScrollHit> hits = response.getHits().iterator();
+                for (MultiGetItemResponse item : items) {
+                    NaturalSortScrollHit hit = hits.next();
+                    if (item.isFailed()) {
+                        listener.onFailure(new NaturalSortScrollPageException("failed to fetch [" + hit.getIndex() + "]["
+                                + hit.getType() + "][" + hit.getId() + "]: " + item.getFailure().getMessage()
+                                + ", retry with the same cursor", request.cursor()));
+                        return;
+                    }
+                    if (item.getResponse().isExists()) {
+                        hit.source(item.getResponse().getSourceAsBytesRef());
+                    } else {
+                        hits.remove();
+                    }
+                }
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.SEARCH;
+    }
+
+    @Override
+    protected NaturalSortScrollRequest newRequest() {
+        return new NaturalSortScrollRequest();
+    }
+
+    @Override
+    protected NaturalSortScrollResponse newResponse(NaturalSortScrollRequest request, AtomicReferenceArray shardsResponses, ClusterState clusterState) {
+        int unavailableShards = 0;
+        List<String> shardFailures = new ArrayList<>();
+        List<NaturalSortScrollHit> hits = new ArrayList<>();
+        Map<ShardId, Integer> returned = new HashMap<>();
+        for (int i = 0; i < shardsResponses.length(); i++) {
+            Object shardResponse = shardsResponses.get(i);
+            if (shardResponse == null) {
+                unavailableShards++;
+            } else if (shardResponse instanceof BroadcastShardOperationFailedException) {
+                shardFailures.add(ExceptionsHelper.detailedMessage((BroadcastShardOperationFailedException) shardResponse));
+            } else {
+                ShardNaturalSortScrollResponse response = (ShardNaturalSortScrollResponse) shardResponse;
+                hits.addAll(response.hits());
+                returned.put(new ShardId(response.getIndex(), response.getShardId()), response.hits().size());
+            }
+        }
+        if (unavailableShards > 0 || !shardFailures.isEmpty()) {
+            // the cursor must not advance past documents of shards that did not answer
+            throw new NaturalSortScrollPageException("natural sort scroll page failed on " + shardFailures.size()
+                    + " shards and " + unavailableShards + " shards were not available, retry with the same cursor "
+                    + shardFailures, request.cursor());
+        }
+        Collections.sort(hits);
+        List<NaturalSortScrollHit> page = new ArrayList<>(hits.subList(0, Math.min(request.size(), hits.size())));
+        try {
+            NaturalSortCursor cursor = NaturalSortCursor.decode(request.cursor());
+            Map<ShardId, Integer> emitted = new HashMap<>();
+            for (NaturalSortScrollHit hit : page) {
+                // hits are in ascending order, the last hit of a shard wins
+                cursor.put(hit.getShardId(), hit.position());
+                Integer count = emitted.get(hit.getShardId());
+                emitted.put(hit.getShardId(), count == null ? 1 : count + 1);
+            }
+            for (Map.Entry<ShardId, Integer> entry : returned.entrySet()) {
+                // a shard returns less than a page only once it has no documents left
+                Integer count = emitted.get(entry.getKey());
+                if (entry.getValue() < request.size() && entry.getValue().equals(count == null ? 0 : count)) {
+                    cursor.put(entry.getKey(), NaturalSortCursor.Position.exhausted());
+                }
+            }
+            return new NaturalSortScrollResponse(page, cursor.encode(),
+                    shardsResponses.length(), shardsResponses.length(), 0, null);
+        } catch (IOException e) {
+            throw new ElasticsearchException("failed to build natural sort cursor", e);
+        }
+    }
+
+    @Override
+    protected ShardNaturalSortScrollRequest newShardRequest() {
+        return new ShardNaturalSortScrollRequest();
+    }
+
+    @Override
+    protected ShardNaturalSortScrollRequest newShardRequest(int numShards, ShardRouting shard, NaturalSortScrollRequest request) {
+        try {
+            NaturalSortCursor cursor = NaturalSortCursor.decode(request.cursor());
+            return new ShardNaturalSortScrollRequest(shard.shardId(), request, cursor.get(shard.shardId()));
+        } catch (IOException e) {
+            throw new ElasticsearchIllegalArgumentException("invalid natural sort cursor", e);
+        }
+    }
+
+    @Override
+    protected ShardNaturalSortScrollResponse newShardResponse() {
+        return new ShardNaturalSortScrollResponse();
+    }
+
+    @Override
+    protected ShardNaturalSortScrollResponse shardOperation(ShardNaturalSortScrollRequest request) throws ElasticsearchException {
+        IndexService indexService = indicesService.indexServiceSafe(request.shardId().getIndex());
+        IndexShard indexShard = indexService.shardSafe(request.shardId().id());
+        Filter filter = null;
+        if (request.source() != null && request.source().length() > 0) {
+            filter = new QueryWrapperFilter(indexService.queryParserService().parseQuery(request.source()).query());
+        }
+        Engine.Searcher searcher = indexShard.acquireSearcher("naturalsort_scroll");
+        try {
+            return new ShardNaturalSortScrollResponse(request.shardId(), scan(request, searcher.reader(), filter, indexService.mapperService().hasNested()));
+        } catch (IOException e) {
+            throw new ElasticsearchException("failed to scroll natural sort keys of " + request.shardId(), e);
+        } finally {
+            searcher.close();
+        }
+    }
+
+    @Override
+    protected GroupShardsIterator shards(ClusterState clusterState, NaturalSortScrollRequest request, String[] concreteIndices) {
+        GroupShardsIterator shards = clusterService.operationRouting().searchShards(clusterState, request.indices(), concreteIndices, null, null);
+        NaturalSortCursor cursor;
+        try {
+            cursor = NaturalSortCursor.decode(request.cursor());
+        } catch (IOException e) {
+            throw new ElasticsearchIllegalArgumentException("invalid natural sort cursor", e);
+        }
+        List<ShardIterator> remaining = new ArrayList<>(shards.size());
+        for (ShardIterator shard : shards) {
+            NaturalSortCursor.Position position = cursor.get(shard.shardId());
+            if (position == null || !position.isExhausted()) {
+                remaining.add(shard);
+            }
+        }
+        return new GroupShardsIterator(remaining);
+    }
+
+    @Override
+    protected ClusterBlockException checkGlobalBlock(ClusterState state, NaturalSortScrollRequest request) {
+        return state.blocks().globalBlockedException(ClusterBlockLevel.READ);
+    }
+
+    @Override
+    protected ClusterBlockException checkRequestBlock(ClusterState state, NaturalSortScrollRequest request, String[] concreteIndices) {
+        return state.blocks().indicesBlockedException(ClusterBlockLevel.READ, concreteIndices);
+    }
+
+    private List<NaturalSortScrollHit> scan(ShardNaturalSortScrollRequest request, IndexReader reader, Filter filter,
+                                            boolean nested) throws IOException {
+        List<NaturalSortScrollHit> hits = new ArrayList<>();
+        Bits[] acceptDocs = new Bits[reader.leaves().size()];
+        Bits liveDocs = MultiFields.getLiveDocs(reader);
+        NaturalSortCursor.Position position = request.position();
+        if (position != null && position.isExhausted()) {
+            return hits;
+        }
+        Terms terms = MultiFields.getTerms(reader, request.field());
+        if (terms != null && (position == null || position.key() != null)) {
+            TermsEnum termsEnum = terms.iterator(null);
+            BytesRef term;
+            if (position == null) {
+                term = termsEnum.next();
+            } else if (termsEnum.seekCeil(position.key()) == TermsEnum.SeekStatus.END) {
+                term = null;
+            } else {
+                term = termsEnum.term();
+            }
+            DocsEnum docsEnum = null;
+            while (term != null && hits.size() < request.size()) {
+                BytesRef after = position != null && term.bytesEquals(position.key()) ? new BytesRef(position.uid()) : null;
+                BytesRef key = BytesRef.deepCopyOf(term);
+                int remaining = request.size() - hits.size();
+                docsEnum = termsEnum.docs(liveDocs, docsEnum, DocsEnum.FLAG_NONE);
+                List<Integer> docs;
+                if (preferUidWalk(termsEnum.docFreq(), remaining, reader.maxDoc())) {
+                    FixedBitSet members = new FixedBitSet(reader.maxDoc());
+                    int doc;
+                    while ((doc = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                        if (filter == null || accept(filter, reader.leaves(), acceptDocs, doc)) {
+                            members.set(doc);
+                        }
+                    }
+                    docs = walkUids(reader, members, after, remaining);
+                } else {
+                    docs = smallestUids(reader, docsEnum, filter, acceptDocs, after, remaining);
+                }
+                load(request.shardId(), reader, key, docs, hits);
+                term = termsEnum.next();
+            }
+            if (term != null) {
+                return hits;
+            }
+        }
+        if (hits.size() < request.size() && !allHaveField(reader, request.field())) {
+            // documents without a key come last
+            BytesRef after = position != null && position.key() == null ? new BytesRef(position.uid()) : null;
+            List<Integer> docs = walkUids(reader, new MissingDocs(reader.leaves(), request.field(), filter, nested),
+                    after, request.size() - hits.size());
+            load(request.shardId(), reader, null, docs, hits);
+        }
+        return hits;
+    }
+
+    /**
+     * Reading the uid of each of <code>count</code> documents costs <code>count</code> stored field
+     * reads. Walking the uid terms from the cursor until <code>remaining</code> of them are found
+     * visits about <code>remaining * maxDoc / count</code> terms, which is cheaper for large groups.
+     */
+    private static boolean preferUidWalk(int count, int remaining, int maxDoc) {
+        return (long) count * count > (long) remaining * maxDoc;
+    }
+
+    /**
+     * @return the documents with the smallest uids after <code>after</code>, in uid order
+     */
+    private static List<Integer> smallestUids(IndexReader reader, DocIdSetIterator docs, Filter filter, Bits[] acceptDocs,
+                                              BytesRef after, int remaining) throws IOException {
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(remaining, Collections.reverseOrder());
+        int doc;
+        while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            if (filter != null && !accept(filter, reader.leaves(), acceptDocs, doc)) {
+                continue;
+            }
+            JustUidFieldsVisitor visitor = new JustUidFieldsVisitor();
+            reader.document(doc, visitor);
+            if (visitor.uid() == null) {
+                continue;
+            }
+            BytesRef uid = new BytesRef(visitor.uid().toString());
+            if (after != null && uid.compareTo(after) <= 0) {
+                continue;
+            }
+            if (queue.size() < remaining) {
+                queue.add(new Candidate(uid, doc));
+            } else if (uid.compareTo(queue.peek().uid) < 0) {
+                queue.poll();
+                queue.add(new Candidate(uid, doc));
+            }
+        }
+        List<Candidate> candidates = new ArrayList<>(queue);
+        Collections.sort(candidates);
+        List<Integer> result = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            result.add(candidate.doc);
+        }
+        return result;
+    }
+
+    /**
+     * @return the first <code>remaining</code> members after <code>after</code>, in uid order
+     */
+    private static List<Integer> walkUids(IndexReader reader, Bits members, BytesRef after, int remaining) throws IOException {
+        List<Integer> result = new ArrayList<>();
+        Terms uids = MultiFields.getTerms(reader, UidFieldMapper.NAME);
+        if (uids == null) {
+            return result;
+        }
+        TermsEnum termsEnum = uids.iterator(null);
+        BytesRef uid;
+        if (after == null) {
+            uid = termsEnum.next();
+        } else {
+            TermsEnum.SeekStatus status = termsEnum.seekCeil(after);
+            if (status == TermsEnum.SeekStatus.END) {
+                uid = null;
+            } else if (status == TermsEnum.SeekStatus.FOUND) {
+                uid = termsEnum.next();
+            } else {
+                uid = termsEnum.term();
+            }
+        }
+        DocsEnum docsEnum = null;
+        while (uid != null && result.size() < remaining) {
+            // nested documents share the uid of their root document
+            docsEnum = termsEnum.docs(null, docsEnum, DocsEnum.FLAG_NONE);
+            int doc;
+            while ((doc = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (members.get(doc)) {
+                    result.add(doc);
+                    break;
+                }
+            }
+            uid = termsEnum.next();
+        }
+        return result;
+    }
+
+    private static boolean allHaveField(IndexReader reader, String field) throws IOException {
+        for (AtomicReaderContext context : reader.leaves()) {
+            if (!(FieldCache.DEFAULT.getDocsWithField(context.reader(), field) instanceof Bits.MatchAllBits)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void load(ShardId shardId, IndexReader reader, BytesRef key, List<Integer> docs,
+                             List<NaturalSortScrollHit> hits) throws IOException {
+        for (int doc : docs) {
+            UidAndRoutingFieldsVisitor visitor = new UidAndRoutingFieldsVisitor();
+            reader.document(doc, visitor);
+            hits.add(new NaturalSortScrollHit(shardId, key, visitor.uid().type(), visitor.uid().id(), visitor.routing()));
+        }
+    }
+
+    private static boolean accept(Filter filter, List<AtomicReaderContext> leaves, Bits[] acceptDocs, int doc) throws IOException {
+        int leaf = ReaderUtil.subIndex(doc, leaves);
+        AtomicReaderContext context = leaves.get(leaf);
+        if (acceptDocs[leaf] == null) {
+            acceptDocs[leaf] = DocIdSets.toSafeBits(context.reader(),
+                    filter.getDocIdSet(context, context.reader().getLiveDocs()));
+        }
+        return acceptDocs[leaf].get(doc - context.docBase);
+    }
+
+    /**
+     * Live root documents accepted by the filter without a value in the field. The documents with a
+     * value come from the field cache, the other bits of a segment are built on first access.
+     */
+    private static final class MissingDocs implements Bits {
+
+        private final List<AtomicReaderContext> leaves;
+
+        private final String field;
+
+        private final Filter filter;
+
+        private final boolean nested;
+
+        private final Bits[] leafBits;
+
+        private MissingDocs(List<AtomicReaderContext> leaves, String field, Filter filter, boolean nested) {
+            this.leaves = leaves;
+            this.field = field;
+            this.filter = filter;
+            this.nested = nested;
+            this.leafBits = new Bits[leaves.size()];
+        }
+
+        @Override
+        public boolean get(int doc) {
+            int leaf = ReaderUtil.subIndex(doc, leaves);
+            AtomicReaderContext context = leaves.get(leaf);
+            if (leafBits[leaf] == null) {
+                try {
+                    leafBits[leaf] = leafBits(context);
+                } catch (IOException e) {
+                    throw new ElasticsearchException("failed to find documents without [" + field + "]", e);
+                }
+            }
+            return leafBits[leaf].get(doc - context.docBase);
+        }
+
+        @Override
+        public int length() {
+            AtomicReaderContext last = leaves.get(leaves.size() - 1);
+            return last.docBase + last.reader().maxDoc();
+        }
+
+        private Bits leafBits(AtomicReaderContext context) throws IOException {
+            AtomicReader reader = context.reader();
+            final Bits liveDocs = reader.getLiveDocs();
+            final Bits withField = FieldCache.DEFAULT.getDocsWithField(reader, field);
+            final Bits accepted = filter != null ? DocIdSets.toSafeBits(reader, filter.getDocIdSet(context, liveDocs)) : null;
+            final Bits roots = nested ? DocIdSets.toSafeBits(reader, NonNestedDocsFilter.INSTANCE.getDocIdSet(context, null)) : null;
+            final int maxDoc = reader.maxDoc();
+            return new Bits() {
+                @Override
+                public boolean get(int doc) {
+                    return (liveDocs == null || liveDocs.get(doc)) && !withField.get(doc)
+                            && (accepted == null || accepted.get(doc)) && (roots == null || roots.get(doc));
+                }
+
+                @Override
+                public int length() {
+                    return maxDoc;
+                }
+            };
+        }
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+
+        private final BytesRef uid;
+
+        private final int doc;
+
+        private Candidate(BytesRef uid, int doc) {
+            this.uid = uid;
+            this.doc = doc;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return uid.compareTo(other.uid);
+        }
+    }
+}
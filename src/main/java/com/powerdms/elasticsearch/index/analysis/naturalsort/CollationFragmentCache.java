@@ -0,0 +1,162 @@
+package com.powerdms.elasticsearch.index.analysis.naturalsort;
+
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assembles natural sort keys segment by segment.
+ *
+ * A collation key is a sequence of levels (primary, secondary, tertiary, ...) separated by a
+ * zero char. As long as the collator has no contractions or reordering across a digit boundary,
+ * the key of a whole string equals the level-wise concatenation of the keys of its segments.
+ * Text segments are collated once and kept in a bounded cache shared by all filter instances,
+ * ASCII digits are looked up in a precomputed table, so values built from a few stable text
+ * fragments and varying numbers rarely reach the collator at all.
+ */
+public class CollationFragmentCache {
+
+    private static final String[] PROBES = new String[]{
+            "invoice!!!00000000000000001043!!!-!!!page!!!00000000000000000007",
+            "\u00e9a00000000000000000001b\u00e8",
+            "ch00000000000000000001ll00000000000000000002",
+            "_heath_html00000000000000000002!!!-!!!html",
+            // Thai and Lao prevowels are swapped with the following char
+            "\u0e4000000000000000000001\u0e01\u0e40",
+            "\u0ec000000000000000000001\u0e81\u0ec0"
+    };
+
+    private final Cache<String, byte[][]> fragments;
+
+    private final byte[][][] digits;
+
+    private final boolean segmentable;
+
+    /**
+     * @param collator prototype collator, only used during construction
+     * @param maxSize  maximum number of cached text fragments
+     */
+    public CollationFragmentCache(Collator collator, long maxSize) {
+        this.fragments = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .build();
+        this.digits = new byte[10][][];
+        for (int i = 0; i < 10; i++) {
+            digits[i] = levels(collator.getCollationKey(String.valueOf((char) ('0' + i))).toByteArray());
+        }
+        this.segmentable = probe(collator);
+    }
+
+    /**
+     * @return true if segment-wise keys are identical to whole string keys for this collator
+     */
+    public boolean isSegmentable() {
+        return segmentable;
+    }
+
+    /**
+     * Build the collation key of an already padded natural sort string.
+     *
+     * @param collator collator of the calling filter, used for cache misses
+     * @param s        padded natural sort string
+     * @param segments reusable scratch list of the calling filter
+     * @return collation key
+     */
+    public byte[] key(Collator collator, String s, List<byte[][]> segments) {
+        segments.clear();
+        int start = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (i > start) {
+                    segments.add(fragment(collator, s.substring(start, i)));
+                }
+                segments.add(digits[c - '0']);
+                start = i + 1;
+            }
+        }
+        if (length > start) {
+            segments.add(fragment(collator, s.substring(start, length)));
+        }
+        return assemble(segments);
+    }
+
+    private byte[][] fragment(Collator collator, String fragment) {
+        byte[][] levels = fragments.getIfPresent(fragment);
+        if (levels == null) {
+            levels = levels(collator.getCollationKey(fragment).toByteArray());
+            fragments.put(fragment, levels);
+        }
+        return levels;
+    }
+
+    private boolean probe(Collator collator) {
+        for (String probe : PROBES) {
+            byte[] whole = collator.getCollationKey(probe).toByteArray();
+            if (!Arrays.equals(whole, key(collator, probe, new ArrayList<byte[][]>()))) {
+                return false;
+            }
+        }
+        fragments.invalidateAll();
+        return true;
+    }
+
+    /**
+     * Split a collation key into its levels. Keys are sequences of 16 bit chars,
+     * levels are separated by a zero char.
+     */
+    public static byte[][] levels(byte[] key) {
+        int count = 1;
+        for (int i = 0; i + 1 < key.length; i += 2) {
+            if (key[i] == 0 && key[i + 1] == 0) {
+                count++;
+            }
+        }
+        byte[][] levels = new byte[count][];
+        int level = 0;
+        int start = 0;
+        for (int i = 0; i + 1 < key.length; i += 2) {
+            if (key[i] == 0 && key[i + 1] == 0) {
+                levels[level++] = Arrays.copyOfRange(key, start, i);
+                start = i + 2;
+            }
+        }
+        levels[level] = Arrays.copyOfRange(key, start, key.length);
+        return levels;
+    }
+
+    private static byte[] assemble(List<byte[][]> segments) {
+        int numLevels = 0;
+        int length = 0;
+        for (byte[][] segment : segments) {
+            numLevels = Math.max(numLevels, segment.length);
+            for (byte[] level : segment) {
+                length += level.length;
+            }
+        }
+        if (numLevels == 0) {
+            return new byte[0];
+        }
+        byte[] key = new byte[length + 2 * (numLevels - 1)];
+        int pos = 0;
+        for (int level = 0; level < numLevels; level++) {
+            if (level > 0) {
+                // level separator, already zero
+                pos += 2;
+            }
+            for (byte[][] segment : segments) {
+                if (level < segment.length) {
+                    System.arraycopy(segment[level], 0, key, pos, segment[level].length);
+                    pos += segment[level].length;
+                }
+            }
+        }
+        return key;
+    }
+}
@@ -1,6 +1,7 @@
 package com.powerdms.elasticsearch.index.analysis.naturalsort;
 
 import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.assistedinject.Assisted;
 import org.elasticsearch.common.settings.Settings;
@@ -15,15 +16,38 @@ public class NaturalSortKeyFilterFactory extends AbstractTokenFilterFactory {
 
     private final String locale;
 
+    private final NaturalSortKeyGenerator generator;
+
     @Inject
     public NaturalSortKeyFilterFactory(Index index, @IndexSettings Settings indexSettings,
                                        @Assisted String name, @Assisted Settings settings) {
         super(index, indexSettings, name, settings);
         this.locale = settings.get("locale", Locale.getDefault().toString());
+        Collator collator = Collator.getInstance(new Locale(locale));
+        CollationFragmentCache fragmentCache = settings.getAsBoolean("segmented", false) ?
+                new CollationFragmentCache(collator, settings.getAsInt("fragment_cache_size", 10000)) : null;
+        String separator = settings.get("whitespace_separator", NaturalSortKeyOptions.DEFAULT_SEPARATOR);
+        for (int i = 0; i < separator.length(); i++) {
+            if (Character.isDigit(separator.charAt(i))) {
+                // unpadded digits in the key break the numeric order of digit runs
+                throw new ElasticsearchIllegalArgumentException("whitespace_separator [" + separator
+                        + "] of naturalsort filter [" + name + "] must not contain digits");
+            }
+        }
+        NaturalSortKeyOptions options = new NaturalSortKeyOptions(settings.getAsBoolean("collapse_whitespace", false),
+                separator,
+                settings.getAsBoolean("remove_punctuation", false),
+                settings.getAsBoolean("normalize_digits", false),
+                settings.getAsBoolean("fold", false));
+        this.generator = new NaturalSortKeyGenerator(collator, fragmentCache, options);
+    }
+
+    public String locale() {
+        return locale;
     }
 
     @Override
     public TokenStream create(TokenStream tokenStream) {
-        return new NaturalSortKeyFilter(tokenStream, Collator.getInstance(new Locale(locale)));
+        return new NaturalSortKeyFilter(tokenStream, generator);
     }
 }
@@ -0,0 +1,221 @@
+package com.powerdms.elasticsearch.index.analysis.naturalsort;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.powerdms.elasticsearch.index.analysis.naturalsort.NaturalSortKeyFilter.MAX_LENGTH;
+import static com.powerdms.elasticsearch.index.analysis.naturalsort.NaturalSortKeyFilter.MAX_NUM_DIGITS_IN_DIGIT_RUN;
+
+/**
+ * Generates natural sort keys.
+ *
+ * A generator is immutable and shared by all filter instances of a filter factory, i.e. by all
+ * indexing threads. Everything that changes while a key is built lives in a {@link Scratch}
+ * owned by a single filter instance, including the collator, because collation key generation
+ * is synchronized on the collator instance.
+ */
+public final class NaturalSortKeyGenerator {
+
+    private static final int SPACE_CHARACTER = 32;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Collator collator;
+
+    private final CollationFragmentCache fragmentCache;
+
+    private final NaturalSortKeyOptions options;
+
+    private final boolean asciiLowerCase;
+
+    /**
+     * @param collator      prototype collator, never used directly but cloned for each scratch
+     * @param fragmentCache segment-wise key assembly, or null to collate the whole string
+     * @param options       normalization applied while scanning for digit runs
+     */
+    public NaturalSortKeyGenerator(Collator collator, CollationFragmentCache fragmentCache, NaturalSortKeyOptions options) {
+        this.collator = collator;
+        this.fragmentCache = fragmentCache != null && fragmentCache.isSegmentable() ? fragmentCache : null;
+        this.options = options;
+        // ASCII lower-casing must give the same result as String.toLowerCase() in the default locale
+        this.asciiLowerCase = "I".toLowerCase().equals("i");
+    }
+
+    /**
+     * @return per-thread state for {@link #key(char[], int, Scratch)}
+     */
+    public Scratch newScratch() {
+        return new Scratch((Collator) collator.clone());
+    }
+
+    /**
+     * @param buffer  term chars
+     * @param length  term length
+     * @param scratch state of the calling thread
+     * @return natural sort key
+     */
+    public byte[] key(char[] buffer, int length, Scratch scratch)
+    {
+        if (length == 0)
+        {
+            return EMPTY;
+        }
+        scratch.digitRun.setLength(0);
+        scratch.sb.setLength(0);
+        scratch.inWhitespace = false;
+        lowerCase(buffer, length, scratch);
+        char[] chars = scratch.chars;
+        for (int i = 0; i < scratch.length; i++)
+        {
+            char character = chars[i];
+            if (options.fold() && character >= 0x80)
+            {
+                // Compatibility folding of a single code point, the result is scanned like the input
+                int count = Character.isHighSurrogate(character) && i + 1 < scratch.length
+                        && Character.isLowSurrogate(chars[i + 1]) ? 2 : 1;
+                String folded = Normalizer.normalize(new String(chars, i, count), Normalizer.Form.NFKC);
+                for (int j = 0; j < folded.length(); j++)
+                {
+                    scan(Character.toLowerCase(folded.charAt(j)), scratch);
+                }
+                i += count - 1;
+            }
+            else
+            {
+                scan(character, scratch);
+            }
+        }
+        if (scratch.digitRun.length() > 0)
+        {
+            appendDigitRun(scratch);
+        }
+        String retString = scratch.sb.toString();
+        byte[] collatedBytes = fragmentCache != null ?
+                fragmentCache.key(scratch.collator, retString, scratch.segments) :
+                scratch.collator.getCollationKey(retString).toByteArray();
+        if (collatedBytes.length > MAX_LENGTH) {
+            return Arrays.copyOf(collatedBytes, MAX_LENGTH);
+        }
+        return collatedBytes;
+    }
+
+    private void lowerCase(char[] buffer, int length, Scratch scratch)
+    {
+        if (asciiLowerCase)
+        {
+            char[] chars = scratch.chars = ArrayUtil.grow(scratch.chars, length);
+            int i = 0;
+            for (; i < length; i++)
+            {
+                char character = buffer[i];
+                if (character >= 0x80)
+                {
+                    break;
+                }
+                chars[i] = character >= 'A' && character <= 'Z' ? (char) (character + 32) : character;
+            }
+            if (i == length)
+            {
+                scratch.length = length;
+                return;
+            }
+        }
+        // Locale and context sensitive lower-casing, may change the length
+        String lower = new String(buffer, 0, length).toLowerCase();
+        scratch.chars = ArrayUtil.grow(scratch.chars, lower.length());
+        lower.getChars(0, lower.length(), scratch.chars, 0);
+        scratch.length = lower.length();
+    }
+
+    private void scan(char character, Scratch scratch)
+    {
+        if (options.normalizeDigits() && character > '9' && Character.isDigit(character))
+        {
+            character = (char) ('0' + Character.digit(character, 10));
+        }
+        if (Character.isDigit(character))
+        {
+            // Continue the digit run, append the digit to the current digit run and continue
+            scratch.digitRun.append(character);
+            scratch.inWhitespace = false;
+            if (scratch.digitRun.length() >= MAX_NUM_DIGITS_IN_DIGIT_RUN)
+            {
+                // Digit is too big, cut it here.
+                appendDigitRun(scratch);
+            }
+            return;
+        }
+        if (scratch.digitRun.length() > 0)
+        {
+            // Digit run has finished, if there was one. Time to convert the digit run!
+            appendDigitRun(scratch);
+        }
+        if ((int) character <= SPACE_CHARACTER)
+        {
+            if (!options.collapseWhitespace() || !scratch.inWhitespace)
+            {
+                scratch.sb.append(options.separator());
+            }
+            scratch.inWhitespace = true;
+        }
+        else if (!options.removePunctuation() || !isPunctuation(character))
+        {
+            scratch.sb.append(character);
+            scratch.inWhitespace = false;
+        }
+    }
+
+    private static void appendDigitRun(Scratch scratch)
+    {
+        for (int i = scratch.digitRun.length(); i < MAX_NUM_DIGITS_IN_DIGIT_RUN; i++) {
+            scratch.sb.append('0');
+        }
+        scratch.sb.append(scratch.digitRun);
+        scratch.digitRun.setLength(0);
+    }
+
+    private static boolean isPunctuation(char character)
+    {
+        switch (Character.getType(character)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Key generation state of a single thread.
+     */
+    public static final class Scratch {
+
+        private final Collator collator;
+
+        private final StringBuilder sb = new StringBuilder();
+
+        private final StringBuilder digitRun = new StringBuilder(MAX_NUM_DIGITS_IN_DIGIT_RUN);
+
+        private final List<byte[][]> segments = new ArrayList<>();
+
+        private char[] chars = new char[16];
+
+        private int length;
+
+        private boolean inWhitespace;
+
+        private Scratch(Collator collator) {
+            this.collator = collator;
+        }
+    }
+}
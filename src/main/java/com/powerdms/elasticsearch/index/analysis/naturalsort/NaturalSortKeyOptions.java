@@ -0,0 +1,57 @@
+package com.powerdms.elasticsearch.index.analysis.naturalsort;
+
+/**
+ * Normalization applied by the naturalsort filter while it scans a term for digit runs.
+ */
+public class NaturalSortKeyOptions {
+
+    public static final String DEFAULT_SEPARATOR = "!!!";
+
+    public static final NaturalSortKeyOptions DEFAULT = new NaturalSortKeyOptions(false, DEFAULT_SEPARATOR, false, false, false);
+
+    private final boolean collapseWhitespace;
+
+    private final String separator;
+
+    private final boolean removePunctuation;
+
+    private final boolean normalizeDigits;
+
+    private final boolean fold;
+
+    /**
+     * @param collapseWhitespace replace a run of whitespace and control chars by a single separator
+     * @param separator          replacement of whitespace and control chars
+     * @param removePunctuation  drop punctuation chars
+     * @param normalizeDigits    map non-ASCII decimal digits to ASCII digits
+     * @param fold               apply Unicode compatibility folding (NFKC) to each non-ASCII char
+     */
+    public NaturalSortKeyOptions(boolean collapseWhitespace, String separator, boolean removePunctuation,
+                                 boolean normalizeDigits, boolean fold) {
+        this.collapseWhitespace = collapseWhitespace;
+        this.separator = separator;
+        this.removePunctuation = removePunctuation;
+        this.normalizeDigits = normalizeDigits;
+        this.fold = fold;
+    }
+
+    public boolean collapseWhitespace() {
+        return collapseWhitespace;
+    }
+
+    public String separator() {
+        return separator;
+    }
+
+    public boolean removePunctuation() {
+        return removePunctuation;
+    }
+
+    public boolean normalizeDigits() {
+        return normalizeDigits;
+    }
+
+    public boolean fold() {
+        return fold;
+    }
+}
@@ -1,8 +1,17 @@
 package com.powerdms.elasticsearch.plugin.naturalsort;
 
+import org.elasticsearch.action.ActionModule;
 import org.elasticsearch.index.analysis.AnalysisModule;
 import org.elasticsearch.plugins.AbstractPlugin;
+import org.elasticsearch.rest.RestModule;
+import com.powerdms.elasticsearch.action.naturalsort.footprint.NaturalSortFootprintAction;
+import com.powerdms.elasticsearch.action.naturalsort.footprint.TransportNaturalSortFootprintAction;
+import com.powerdms.elasticsearch.action.naturalsort.scroll.NaturalSortScrollAction;
+import com.powerdms.elasticsearch.action.naturalsort.scroll.TransportNaturalSortScrollAction;
 import com.powerdms.elasticsearch.index.analysis.naturalsort.NaturalSortAnalysisBinderProcessor;
+import com.powerdms.elasticsearch.rest.action.naturalsort.RestNaturalSortFootprintAction;
+import com.powerdms.elasticsearch.rest.action.naturalsort.RestNaturalSortRekeyAction;
+import com.powerdms.elasticsearch.rest.action.naturalsort.RestNaturalSortScrollAction;
 
 public class NaturalSortAnalysisPlugin extends AbstractPlugin {
 
@@ -22,5 +31,16 @@ public class NaturalSortAnalysisPlugin extends AbstractPlugin {
     public void onModule(AnalysisModule module) {
         module.addProcessor(new NaturalSortAnalysisBinderProcessor());
     }
+
+    public void onModule(RestModule module) {
+        module.addRestAction(RestNaturalSortRekeyAction.class);
+        module.addRestAction(RestNaturalSortFootprintAction.class);
+        module.addRestAction(RestNaturalSortScrollAction.class);
+    }
+
+    public void onModule(ActionModule module) {
+        module.registerAction(NaturalSortFootprintAction.INSTANCE, TransportNaturalSortFootprintAction.class);
+        module.registerAction(NaturalSortScrollAction.INSTANCE, TransportNaturalSortScrollAction.class);
+    }
 }
 
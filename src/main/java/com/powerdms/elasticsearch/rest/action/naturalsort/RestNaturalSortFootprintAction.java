@@ -0,0 +1,54 @@
+package com.powerdms.elasticsearch.rest.action.naturalsort;
+
+import com.powerdms.elasticsearch.action.naturalsort.footprint.NaturalSortFootprintAction;
+import com.powerdms.elasticsearch.action.naturalsort.footprint.NaturalSortFootprintRequest;
+import com.powerdms.elasticsearch.action.naturalsort.footprint.NaturalSortFootprintResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.action.support.RestBuilderListener;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+import static org.elasticsearch.rest.RestStatus.OK;
+import static org.elasticsearch.rest.action.support.RestActions.buildBroadcastShardsHeader;
+
+/**
+ * Reports the size of the natural sort keys of an index.
+ *
+ * <pre>
+ * GET /{index}/_naturalsort/footprint?fields=...
+ * </pre>
+ */
+public class RestNaturalSortFootprintAction extends BaseRestHandler {
+
+    @Inject
+    public RestNaturalSortFootprintAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(GET, "/_naturalsort/footprint", this);
+        controller.registerHandler(GET, "/{index}/_naturalsort/footprint", this);
+    }
+
+    @Override
+    protected void handleRequest(final RestRequest request, RestChannel channel, Client client) throws Exception {
+        NaturalSortFootprintRequest footprintRequest = new NaturalSortFootprintRequest(Strings.splitStringByCommaToArray(request.param("index")))
+                .fields(request.paramAsStringArray("fields", Strings.EMPTY_ARRAY));
+        client.admin().indices().execute(NaturalSortFootprintAction.INSTANCE, footprintRequest, new RestBuilderListener<NaturalSortFootprintResponse>(channel) {
+            @Override
+            public RestResponse buildResponse(NaturalSortFootprintResponse response, XContentBuilder builder) throws Exception {
+                builder.startObject();
+                buildBroadcastShardsHeader(builder, response);
+                response.toXContent(builder, request);
+                builder.endObject();
+                return new BytesRestResponse(OK, builder);
+            }
+        });
+    }
+}
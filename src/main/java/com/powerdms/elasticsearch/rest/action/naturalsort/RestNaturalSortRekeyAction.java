@@ -0,0 +1,141 @@
+package com.powerdms.elasticsearch.rest.action.naturalsort;
+
+import com.powerdms.elasticsearch.action.naturalsort.rekey.NaturalSortRekeyJob;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.elasticsearch.rest.RestRequest.Method.DELETE;
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+/**
+ * Starts and reports natural sort rekey jobs.
+ *
+ * <pre>
+ * POST /{index}/_naturalsort/rekey?target=...&amp;alias=...&amp;workers=4&amp;size=500&amp;max_bytes_per_sec=10mb&amp;allow_failures=false
+ * GET /_naturalsort/rekey
+ * GET /_naturalsort/rekey/{id}
+ * DELETE /_naturalsort/rekey/{id}
+ * </pre>
+ *
+ * The optional request body contains settings for the new index, e.g.
+ * <code>{ "index.analysis.filter.naturalsort_de.locale" : "de" }</code>
+ *
+ * Finished jobs are removed after <code>naturalsort.rekey.retention</code> (default 1h) or by DELETE.
+ */
+public class RestNaturalSortRekeyAction extends BaseRestHandler {
+
+    public static final TimeValue DEFAULT_RETENTION = TimeValue.timeValueHours(1);
+
+    private final ThreadPool threadPool;
+
+    private final TimeValue retention;
+
+    private final ConcurrentMap<String, NaturalSortRekeyJob> jobs = ConcurrentCollections.newConcurrentMap();
+
+    @Inject
+    public RestNaturalSortRekeyAction(Settings settings, RestController controller, Client client, ThreadPool threadPool) {
+        super(settings, controller, client);
+        this.threadPool = threadPool;
+        this.retention = settings.getAsTime("naturalsort.rekey.retention", DEFAULT_RETENTION);
+        controller.registerHandler(POST, "/{index}/_naturalsort/rekey", this);
+        controller.registerHandler(GET, "/_naturalsort/rekey", this);
+        controller.registerHandler(GET, "/_naturalsort/rekey/{id}", this);
+        controller.registerHandler(DELETE, "/_naturalsort/rekey/{id}", this);
+    }
+
+    @Override
+    protected void handleRequest(RestRequest request, RestChannel channel, Client client) throws Exception {
+        XContentBuilder builder = channel.newBuilder();
+        evictFinishedJobs();
+        if (request.method() == DELETE) {
+            String id = request.param("id");
+            NaturalSortRekeyJob job = jobs.get(id);
+            if (job == null) {
+                channel.sendResponse(new BytesRestResponse(RestStatus.NOT_FOUND,
+                        builder.startObject().field("error", "rekey job [" + id + "] not found").endObject()));
+                return;
+            }
+            if (!job.finished()) {
+                channel.sendResponse(new BytesRestResponse(RestStatus.CONFLICT,
+                        builder.startObject().field("error", "rekey job [" + id + "] is still running").endObject()));
+                return;
+            }
+            jobs.remove(id);
+            job.toXContent(builder, request);
+            channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+            return;
+        }
+        if (request.method() == GET) {
+            String id = request.param("id");
+            if (id != null) {
+                NaturalSortRekeyJob job = jobs.get(id);
+                if (job == null) {
+                    channel.sendResponse(new BytesRestResponse(RestStatus.NOT_FOUND,
+                            builder.startObject().field("error", "rekey job [" + id + "] not found").endObject()));
+                    return;
+                }
+                job.toXContent(builder, request);
+            } else {
+                builder.startObject().startArray("jobs");
+                for (NaturalSortRekeyJob job : jobs.values()) {
+                    job.toXContent(builder, request);
+                }
+                builder.endArray().endObject();
+            }
+            channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+            return;
+        }
+        String index = request.param("index");
+        int workers = request.paramAsInt("workers", NaturalSortRekeyJob.DEFAULT_WORKERS);
+        int size = request.paramAsInt("size", NaturalSortRekeyJob.DEFAULT_SIZE);
+        if (workers < 1 || size < 1) {
+            channel.sendResponse(new BytesRestResponse(RestStatus.BAD_REQUEST,
+                    builder.startObject().field("error", "workers and size must be at least 1").endObject()));
+            return;
+        }
+        Settings targetSettings = request.hasContent() ?
+                ImmutableSettings.settingsBuilder().loadFromSource(request.content().toUtf8()).build() :
+                ImmutableSettings.EMPTY;
+        NaturalSortRekeyJob job = new NaturalSortRekeyJob(Strings.randomBase64UUID(), settings, client,
+                index, request.param("target", index + "_" + System.currentTimeMillis()))
+                .alias(request.param("alias"))
+                .targetSettings(targetSettings)
+                .workers(workers)
+                .size(size)
+                .scroll(request.paramAsTime("scroll", NaturalSortRekeyJob.DEFAULT_SCROLL))
+                .maxBytesPerSec(request.paramAsSize("max_bytes_per_sec", null))
+                .allowFailures(request.paramAsBoolean("allow_failures", false))
+                .blockWrites(request.paramAsBoolean("block_writes", true));
+        jobs.put(job.id(), job);
+        threadPool.generic().execute(job);
+        job.toXContent(builder, request);
+        channel.sendResponse(new BytesRestResponse(RestStatus.ACCEPTED, builder));
+    }
+
+    private void evictFinishedJobs() {
+        long now = System.currentTimeMillis();
+        for (Iterator<NaturalSortRekeyJob> it = jobs.values().iterator(); it.hasNext(); ) {
+            NaturalSortRekeyJob job = it.next();
+            if (job.finished() && now - job.endTime() > retention.millis()) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.powerdms.elasticsearch.rest.action.naturalsort;
+
+import com.powerdms.elasticsearch.action.naturalsort.scroll.NaturalSortScrollAction;
+import com.powerdms.elasticsearch.action.naturalsort.scroll.NaturalSortScrollRequest;
+import com.powerdms.elasticsearch.action.naturalsort.scroll.NaturalSortScrollResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.action.support.RestBuilderListener;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+import static org.elasticsearch.rest.RestStatus.OK;
+import static org.elasticsearch.rest.action.support.RestActions.buildBroadcastShardsHeader;
+
+/**
+ * Reads the documents of an index in natural sort order.
+ *
+ * <pre>
+ * GET /{index}/_naturalsort/scroll?field=...&amp;size=...&amp;cursor=...
+ * { "query" : ... }
+ * </pre>
+ */
+public class RestNaturalSortScrollAction extends BaseRestHandler {
+
+    @Inject
+    public RestNaturalSortScrollAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(GET, "/{index}/_naturalsort/scroll", this);
+        controller.registerHandler(POST, "/{index}/_naturalsort/scroll", this);
+    }
+
+    @Override
+    protected void handleRequest(final RestRequest request, RestChannel channel, Client client) throws Exception {
+        NaturalSortScrollRequest scrollRequest = new NaturalSortScrollRequest(Strings.splitStringByCommaToArray(request.param("index")))
+                .field(request.param("field"))
+                .size(request.paramAsInt("size", NaturalSortScrollRequest.DEFAULT_SIZE))
+                .cursor(request.param("cursor"));
+        if (request.hasContent()) {
+            scrollRequest.source(request.content());
+        }
+        client.execute(NaturalSortScrollAction.INSTANCE, scrollRequest, new RestBuilderListener<NaturalSortScrollResponse>(channel) {
+            @Override
+            public RestResponse buildResponse(NaturalSortScrollResponse response, XContentBuilder builder) throws Exception {
+                builder.startObject();
+                buildBroadcastShardsHeader(builder, response);
+                response.toXContent(builder, request);
+                builder.endObject();
+                return new BytesRestResponse(OK, builder);
+            }
+        });
+    }
+}
@@ -0,0 +1,86 @@
+package com.powerdms.elasticsearch.naturalsort;
+
+import com.powerdms.elasticsearch.action.naturalsort.footprint.NaturalSortFootprintAction;
+import com.powerdms.elasticsearch.action.naturalsort.footprint.NaturalSortFootprintRequest;
+import com.powerdms.elasticsearch.action.naturalsort.footprint.NaturalSortFootprintResponse;
+import com.powerdms.elasticsearch.action.naturalsort.footprint.NaturalSortFootprintStats;
+import com.powerdms.elasticsearch.integration.AbstractNodesTests;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class NaturalSortFootprintTests extends AbstractNodesTests {
+
+    private Client client;
+
+    @BeforeClass
+    public void createNodes() throws Exception {
+        Settings settings = ImmutableSettings.settingsBuilder()
+                .put("index.number_of_shards", 2)
+                .put("index.number_of_replicas", 0)
+                .build();
+        for (int i = 0; i < 2; i++) {
+            startNode("node" + i, settings);
+        }
+        client = client("node0");
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    @Test
+    public void testFootprint() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("footprint").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        Settings settings = settingsBuilder()
+                .put("index.analysis.analyzer.naturalsort.tokenizer", "keyword")
+                .put("index.analysis.analyzer.naturalsort.filter", "naturalsort")
+                .build();
+
+        client.admin().indices().prepareCreate("footprint")
+                .setSettings(settings)
+                .addMapping("type1", "{ type1 : { properties : { notation : { type : \"string\", fields : { sort : { type : \"string\", analyzer : \"naturalsort\" } } } } } }")
+                .execute().actionGet();
+
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        for (int i = 0; i < 10; i++) {
+            client.prepareIndex("footprint", "type1")
+                    .setSource(jsonBuilder().startObject().field("notation", "Invoice " + i + " - Page " + (i * 7)).endObject()).execute().actionGet();
+            if (i % 3 == 0) {
+                // more than one segment per shard
+                client.admin().indices().prepareRefresh("footprint").execute().actionGet();
+            }
+        }
+
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        NaturalSortFootprintResponse response = client.admin().indices()
+                .execute(NaturalSortFootprintAction.INSTANCE, new NaturalSortFootprintRequest("footprint"))
+                .actionGet();
+
+        assertThat(response.getFailedShards(), equalTo(0));
+        assertThat(response.getIndices().get("footprint").containsKey("notation"), equalTo(false));
+        NaturalSortFootprintStats stats = response.getIndices().get("footprint").get("notation.sort");
+        assertThat(stats.getKeys(), equalTo(10L));
+        assertThat(stats.getTruncated(), equalTo(0L));
+        assertThat(stats.getTermBytes(), greaterThan(stats.getKeyBytes()));
+        assertThat(stats.getPaddingBytes(), greaterThan(0L));
+        assertThat(stats.getWhitespaceBytes(), greaterThan(0L));
+    }
+}
@@ -0,0 +1,115 @@
+package com.powerdms.elasticsearch.naturalsort;
+
+import com.powerdms.elasticsearch.index.analysis.naturalsort.CollationFragmentCache;
+import com.powerdms.elasticsearch.index.analysis.naturalsort.NaturalSortKeyGenerator;
+import com.powerdms.elasticsearch.index.analysis.naturalsort.NaturalSortKeyOptions;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.testng.annotations.Test;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Key generation throughput of a shared {@link NaturalSortKeyGenerator} against the number of threads,
+ * each thread with its own scratch.
+ *
+ * Not part of the default test run, run with
+ * <code>mvn test -Dtest=NaturalSortKeyScalingTests -Dtests.excludedGroups=none</code>
+ */
+@Test(groups = "benchmark")
+public class NaturalSortKeyScalingTests {
+
+    private final static ESLogger logger = Loggers.getLogger(NaturalSortKeyScalingTests.class);
+
+    private static final int[] THREADS = new int[]{1, 2, 4, 8, 16, 32};
+
+    private static final int NUM_TERMS = 64000;
+
+    private static final int KEYS_PER_THREAD = 256000;
+
+    public void testDefaultScaling() throws Exception {
+        scaling("default", new NaturalSortKeyGenerator(Collator.getInstance(Locale.ENGLISH), null,
+                NaturalSortKeyOptions.DEFAULT));
+    }
+
+    public void testSegmentedScaling() throws Exception {
+        Collator collator = Collator.getInstance(Locale.ENGLISH);
+        scaling("segmented", new NaturalSortKeyGenerator(collator, new CollationFragmentCache(collator, 10000),
+                NaturalSortKeyOptions.DEFAULT));
+    }
+
+    private void scaling(String mode, final NaturalSortKeyGenerator generator) throws Exception {
+        final char[][] terms = new char[NUM_TERMS][];
+        for (int i = 0; i < NUM_TERMS; i++) {
+            terms[i] = ("Invoice " + (i / 10) + " - Page " + (i % 10)).toCharArray();
+        }
+        final byte[][] expected = new byte[NUM_TERMS][];
+        NaturalSortKeyGenerator.Scratch reference = generator.newScratch();
+        for (int i = 0; i < NUM_TERMS; i++) {
+            expected[i] = generator.key(terms[i], terms[i].length, reference);
+        }
+        // warm up
+        run(generator, terms, expected, 4);
+        long single = 0;
+        for (int threads : THREADS) {
+            long nanos = run(generator, terms, expected, threads);
+            long keysPerSecond = (long) threads * KEYS_PER_THREAD * 1000000000L / nanos;
+            if (threads == 1) {
+                single = keysPerSecond;
+            }
+            logger.info("{}: {} threads: {} keys/s, {} x single thread",
+                    mode, threads, keysPerSecond, String.format(Locale.ROOT, "%.2f", (double) keysPerSecond / single));
+        }
+    }
+
+    private long run(final NaturalSortKeyGenerator generator, final char[][] terms, final byte[][] expected,
+                     int threads) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t * (NUM_TERMS / threads);
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        NaturalSortKeyGenerator.Scratch scratch = generator.newScratch();
+                        int mismatches = 0;
+                        start.await();
+                        for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                            int term = (offset + i) % NUM_TERMS;
+                            byte[] key = generator.key(terms[term], terms[term].length, scratch);
+                            if (!Arrays.equals(key, expected[term])) {
+                                mismatches++;
+                            }
+                        }
+                        return mismatches;
+                    }
+                }));
+            }
+            long t0 = System.nanoTime();
+            start.countDown();
+            int mismatches = 0;
+            for (Future<Integer> future : futures) {
+                mismatches += future.get();
+            }
+            long nanos = System.nanoTime() - t0;
+            assertThat(mismatches, equalTo(0));
+            return nanos;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -1,5 +1,14 @@
 package com.powerdms.elasticsearch.naturalsort;
 
+import com.powerdms.elasticsearch.index.analysis.naturalsort.CollationFragmentCache;
+import com.powerdms.elasticsearch.index.analysis.naturalsort.NaturalSortKeyFilter;
+import com.powerdms.elasticsearch.index.analysis.naturalsort.NaturalSortKeyGenerator;
+import com.powerdms.elasticsearch.index.analysis.naturalsort.NaturalSortKeyOptions;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.settings.ImmutableSettings;
@@ -10,10 +19,17 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 import com.powerdms.elasticsearch.integration.AbstractNodesTests;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.Collator;
+import java.util.Locale;
+
 import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.testng.Assert.fail;
 
 public class NaturalSortKeyTests extends AbstractNodesTests {
 
@@ -459,4 +475,185 @@ public class NaturalSortKeyTests extends AbstractNodesTests {
         }
 
     }
+
+    @Test
+    public void testSegmented() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        Settings settings = settingsBuilder()
+                .put("index.analysis.filter.naturalsort_segmented.type", "naturalsort")
+                .put("index.analysis.filter.naturalsort_segmented.segmented", true)
+                .put("index.analysis.filter.naturalsort_segmented.fragment_cache_size", 100)
+                .put("index.analysis.analyzer.naturalsort.tokenizer", "keyword")
+                .put("index.analysis.analyzer.naturalsort.filter", "naturalsort_segmented")
+                .build();
+
+        client.admin().indices().prepareCreate("test")
+                .setSettings(settings)
+                .addMapping("type1", "{ type1 : { properties : { notation : { type : \"string\", fields : { sort : { type : \"string\", analyzer : \"naturalsort\" } } } } } }")
+                .execute().actionGet();
+
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        String[] notations = new String[] {
+                "Invoice 1043 - Page 10",
+                "Invoice 1043 - Page 7",
+                "Invoice 999 - Page 2",
+                "invoice 1043 - page 8",
+                "Invoice 1043"
+        };
+
+        for (String notation : notations) {
+            client.prepareIndex("test", "type1")
+                    .setSource(jsonBuilder().startObject().field("notation", notation).endObject()).execute().actionGet();
+        }
+
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        for (int i = 0; i < numberOfRuns(); i++) {
+            SearchResponse searchResponse = client.prepareSearch()
+                    .addField("notation")
+                    .addSort("notation.sort", SortOrder.ASC)
+                    .execute().actionGet();
+
+            assertThat(searchResponse.getHits().getAt(0).field("notation").getValue().toString(), equalTo("Invoice 999 - Page 2"));
+            assertThat(searchResponse.getHits().getAt(1).field("notation").getValue().toString(), equalTo("Invoice 1043"));
+            assertThat(searchResponse.getHits().getAt(2).field("notation").getValue().toString(), equalTo("Invoice 1043 - Page 7"));
+            assertThat(searchResponse.getHits().getAt(3).field("notation").getValue().toString(), equalTo("invoice 1043 - page 8"));
+            assertThat(searchResponse.getHits().getAt(4).field("notation").getValue().toString(), equalTo("Invoice 1043 - Page 10"));
+        }
+
+    }
+
+    @Test
+    public void testSegmentedKeysEqualDefaultKeys() throws Exception {
+        String[] values = new String[] {
+                "Invoice 1043 - Page 10",
+                "invoice 1043 - page 8",
+                "\u00c9mile 10 caf\u00e9 cr\u00e8me 2",
+                "\u00c4rger 7 \u00fcber \u00f8re",
+                "c\u00f4te 3 cot\u00e9 4",
+                "Chapter 10.2.3",
+                "  leading and trailing  ",
+                "tab\tand\nnewline  2",
+                "12345678901234567890123456789 x",
+                "x 000000000000000000000000042",
+                "99999999999999999999",
+                "chll 1 ch 2 ll",
+                "_heath_html2 - html",
+                "\u0e401 \u0e40\u0e01 2 \u0e41\u0e02\u0e40",
+                "\u0ec01 \u0ec0\u0e81 2"
+        };
+        // segmentability of th depends on the JDK, keys have to be equal either way
+        for (String locale : new String[] {"en", "de", "sv", "fr", "th"}) {
+            Collator collator = Collator.getInstance(new Locale(locale));
+            CollationFragmentCache fragmentCache = new CollationFragmentCache(collator, 100);
+            if (locale.equals("fr")) {
+                // backwards secondary ordering, keys cannot be assembled from segments
+                assertThat(fragmentCache.isSegmentable(), equalTo(false));
+            } else if (!locale.equals("th")) {
+                assertThat(locale, fragmentCache.isSegmentable(), equalTo(true));
+            }
+            NaturalSortKeyGenerator plain = new NaturalSortKeyGenerator(collator, null, NaturalSortKeyOptions.DEFAULT);
+            NaturalSortKeyGenerator segmented = new NaturalSortKeyGenerator(collator, fragmentCache, NaturalSortKeyOptions.DEFAULT);
+            // twice, the second time from the cache
+            for (int run = 0; run < 2; run++) {
+                for (String value : values) {
+                    assertThat(locale + " " + value, term(segmented, value), equalTo(term(plain, value)));
+                }
+            }
+        }
+    }
+
+    private static BytesRef term(NaturalSortKeyGenerator generator, String value) throws IOException {
+        TokenStream stream = new NaturalSortKeyFilter(new KeywordTokenizer(new StringReader(value)), generator);
+        CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+        try {
+            stream.reset();
+            assertThat(stream.incrementToken(), equalTo(true));
+            return new BytesRef(termAtt);
+        } finally {
+            stream.end();
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testDigitSeparatorRejected() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        Settings settings = settingsBuilder()
+                .put("index.analysis.filter.naturalsort_separator.type", "naturalsort")
+                .put("index.analysis.filter.naturalsort_separator.whitespace_separator", "_1_")
+                .put("index.analysis.analyzer.naturalsort.tokenizer", "keyword")
+                .put("index.analysis.analyzer.naturalsort.filter", "naturalsort_separator")
+                .build();
+        try {
+            client.admin().indices().prepareCreate("test")
+                    .setSettings(settings)
+                    .execute().actionGet();
+            fail("index created with a digit in the whitespace separator");
+        } catch (Exception e) {
+            assertThat(ExceptionsHelper.detailedMessage(e), containsString("must not contain digits"));
+        }
+    }
+
+    @Test
+    public void testNormalization() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        Settings settings = settingsBuilder()
+                .put("index.analysis.filter.naturalsort_normalized.type", "naturalsort")
+                .put("index.analysis.filter.naturalsort_normalized.collapse_whitespace", true)
+                .put("index.analysis.filter.naturalsort_normalized.whitespace_separator", "!")
+                .put("index.analysis.filter.naturalsort_normalized.remove_punctuation", true)
+                .put("index.analysis.filter.naturalsort_normalized.normalize_digits", true)
+                .put("index.analysis.filter.naturalsort_normalized.fold", true)
+                .put("index.analysis.analyzer.naturalsort.tokenizer", "keyword")
+                .put("index.analysis.analyzer.naturalsort.filter", "naturalsort_normalized")
+                .build();
+
+        client.admin().indices().prepareCreate("test")
+                .setSettings(settings)
+                .addMapping("type1", "{ type1 : { properties : { notation : { type : \"string\", fields : { sort : { type : \"string\", analyzer : \"naturalsort\" } } } } } }")
+                .execute().actionGet();
+
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        String[] notations = new String[] {
+                "Chapter 10",
+                "Chapter \u0663",
+                "Chapter  2",
+                "Chapter: \u2460"
+        };
+
+        for (String notation : notations) {
+            client.prepareIndex("test", "type1")
+                    .setSource(jsonBuilder().startObject().field("notation", notation).endObject()).execute().actionGet();
+        }
+
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        for (int i = 0; i < numberOfRuns(); i++) {
+            SearchResponse searchResponse = client.prepareSearch()
+                    .addField("notation")
+                    .addSort("notation.sort", SortOrder.ASC)
+                    .execute().actionGet();
+
+            assertThat(searchResponse.getHits().getAt(0).field("notation").getValue().toString(), equalTo("Chapter: \u2460"));
+            assertThat(searchResponse.getHits().getAt(1).field("notation").getValue().toString(), equalTo("Chapter  2"));
+            assertThat(searchResponse.getHits().getAt(2).field("notation").getValue().toString(), equalTo("Chapter \u0663"));
+            assertThat(searchResponse.getHits().getAt(3).field("notation").getValue().toString(), equalTo("Chapter 10"));
+        }
+
+    }
 }
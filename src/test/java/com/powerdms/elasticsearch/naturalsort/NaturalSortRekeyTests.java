@@ -0,0 +1,166 @@
+package com.powerdms.elasticsearch.naturalsort;
+
+import com.powerdms.elasticsearch.action.naturalsort.rekey.NaturalSortRekeyJob;
+import com.powerdms.elasticsearch.integration.AbstractNodesTests;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.AliasAction;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class NaturalSortRekeyTests extends AbstractNodesTests {
+
+    private Client client;
+
+    @BeforeClass
+    public void createNodes() throws Exception {
+        Settings settings = ImmutableSettings.settingsBuilder()
+                .put("index.number_of_shards", 3)
+                .put("index.number_of_replicas", 0)
+                .build();
+        for (int i = 0; i < 2; i++) {
+            startNode("node" + i, settings);
+        }
+        client = client("node0");
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    @Test
+    public void testRekey() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("rekey_source", "rekey_target").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        Settings settings = settingsBuilder()
+                .put("index.analysis.filter.naturalsort_locale.type", "naturalsort")
+                .put("index.analysis.filter.naturalsort_locale.locale", "en")
+                .put("index.analysis.analyzer.naturalsort.tokenizer", "keyword")
+                .put("index.analysis.analyzer.naturalsort.filter", "naturalsort_locale")
+                .build();
+
+        client.admin().indices().prepareCreate("rekey_source")
+                .setSettings(settings)
+                .addMapping("type1", "{ type1 : { properties : { notation : { type : \"string\", fields : { sort : { type : \"string\", analyzer : \"naturalsort\" } } } } } }")
+                .execute().actionGet();
+        client.admin().indices().prepareAliases()
+                .addAliasAction(new AliasAction(AliasAction.Type.ADD, "rekey_source", "rekey")
+                        .filter(FilterBuilders.existsFilter("notation"))
+                        .indexRouting("1"))
+                .execute().actionGet();
+
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        for (int i = 20; i > 0; i--) {
+            client.prepareIndex("rekey_source", "type1")
+                    .setSource(jsonBuilder().startObject().field("notation", "Chapter " + i).endObject()).execute().actionGet();
+        }
+
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        NaturalSortRekeyJob job = new NaturalSortRekeyJob("test", ImmutableSettings.EMPTY, client,
+                "rekey_source", "rekey_target")
+                .alias("rekey")
+                .targetSettings(settingsBuilder().put("index.analysis.filter.naturalsort_locale.locale", "de").build())
+                .workers(2)
+                .size(3)
+                .maxBytesPerSec(new ByteSizeValue(1024 * 1024));
+        job.run();
+
+        assertThat(job.failure(), equalTo(null));
+        assertThat(job.state(), equalTo(NaturalSortRekeyJob.State.DONE));
+        assertThat(job.total(), equalTo(20L));
+        assertThat(job.processed(), equalTo(20L));
+        assertThat(job.failed(), equalTo(0L));
+
+        GetAliasesResponse aliases = client.admin().indices().prepareGetAliases("rekey").execute().actionGet();
+        assertThat(aliases.getAliases().containsKey("rekey_target"), equalTo(true));
+        assertThat(aliases.getAliases().containsKey("rekey_source"), equalTo(false));
+        AliasMetaData alias = aliases.getAliases().get("rekey_target").get(0);
+        assertThat(alias.filter(), notNullValue());
+        assertThat(alias.indexRouting(), equalTo("1"));
+        assertThat(setting("rekey_source", IndexMetaData.SETTING_BLOCKS_WRITE), equalTo("true"));
+        assertThat(setting("rekey_target", "index.analysis.filter.naturalsort_locale.locale"), equalTo("de"));
+        assertThat(setting("rekey_source", "index.analysis.filter.naturalsort_locale.locale"), equalTo("en"));
+
+        SearchResponse searchResponse = client.prepareSearch("rekey")
+                .addField("notation")
+                .addSort("notation.sort", SortOrder.ASC)
+                .setSize(20)
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().totalHits(), equalTo(20L));
+        for (int i = 0; i < 20; i++) {
+            assertThat(searchResponse.getHits().getAt(i).field("notation").getValue().toString(), equalTo("Chapter " + (i + 1)));
+        }
+    }
+
+    @Test
+    public void testRekeyWithFailures() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("rekey_failures_source", "rekey_failures_target").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        // malformed numbers are ignored in the source index but rejected by the target index
+        client.admin().indices().prepareCreate("rekey_failures_source")
+                .setSettings(settingsBuilder().put("index.mapping.ignore_malformed", true).build())
+                .addMapping("type1", "{ type1 : { properties : { notation : { type : \"string\" }, number : { type : \"integer\" } } } }")
+                .execute().actionGet();
+        client.admin().indices().prepareAliases().addAlias("rekey_failures_source", "rekey_failures").execute().actionGet();
+
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        for (int i = 0; i < 10; i++) {
+            client.prepareIndex("rekey_failures_source", "type1")
+                    .setSource(jsonBuilder().startObject()
+                            .field("notation", "Chapter " + i)
+                            .field("number", i == 3 ? "three" : Integer.toString(i))
+                            .endObject()).execute().actionGet();
+        }
+
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        NaturalSortRekeyJob job = new NaturalSortRekeyJob("failures", ImmutableSettings.EMPTY, client,
+                "rekey_failures_source", "rekey_failures_target")
+                .alias("rekey_failures")
+                .targetSettings(settingsBuilder().put("index.mapping.ignore_malformed", false).build())
+                .workers(2)
+                .size(3);
+        job.run();
+
+        assertThat(job.state(), equalTo(NaturalSortRekeyJob.State.FAILED));
+        assertThat(job.failure(), notNullValue());
+        assertThat(job.processed(), equalTo(9L));
+        assertThat(job.failed(), equalTo(1L));
+
+        GetAliasesResponse aliases = client.admin().indices().prepareGetAliases("rekey_failures").execute().actionGet();
+        assertThat(aliases.getAliases().containsKey("rekey_failures_source"), equalTo(true));
+        assertThat(aliases.getAliases().containsKey("rekey_failures_target"), equalTo(false));
+        assertThat(setting("rekey_failures_source", IndexMetaData.SETTING_BLOCKS_WRITE), equalTo("false"));
+    }
+
+    private String setting(String index, String setting) {
+        return client.admin().indices().prepareGetSettings(index).execute().actionGet().getSetting(index, setting);
+    }
+}
@@ -0,0 +1,200 @@
+package com.powerdms.elasticsearch.naturalsort;
+
+import com.powerdms.elasticsearch.action.naturalsort.scroll.NaturalSortScrollAction;
+import com.powerdms.elasticsearch.action.naturalsort.scroll.NaturalSortScrollHit;
+import com.powerdms.elasticsearch.action.naturalsort.scroll.NaturalSortScrollResponse;
+import com.powerdms.elasticsearch.integration.AbstractNodesTests;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class NaturalSortScrollTests extends AbstractNodesTests {
+
+    private static final int NUM_DOCS = 30;
+
+    private static final int NUM_UNTITLED = 12;
+
+    private static final int NUM_MISSING = 2;
+
+    private Client client;
+
+    @BeforeClass
+    public void createNodes() throws Exception {
+        Settings settings = ImmutableSettings.settingsBuilder()
+                .put("index.number_of_shards", 3)
+                .put("index.number_of_replicas", 0)
+                .build();
+        for (int i = 0; i < 2; i++) {
+            startNode("node" + i, settings);
+        }
+        client = client("node0");
+        createIndex();
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    private void createIndex() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("scroll").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        Settings settings = settingsBuilder()
+                .put("index.analysis.analyzer.naturalsort.tokenizer", "keyword")
+                .put("index.analysis.analyzer.naturalsort.filter", "naturalsort")
+                .build();
+
+        client.admin().indices().prepareCreate("scroll")
+                .setSettings(settings)
+                .addMapping("type1", "{ type1 : { properties : { group : { type : \"string\", index : \"not_analyzed\" }, notation : { type : \"string\", fields : { sort : { type : \"string\", analyzer : \"naturalsort\" } } } } } }")
+                .execute().actionGet();
+
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            numbers.add(i);
+        }
+        Collections.shuffle(numbers, new Random(0));
+        int n = 0;
+        for (int i : numbers) {
+            // two documents share each notation
+            client.prepareIndex("scroll", "type1", Integer.toString(i))
+                    .setSource(jsonBuilder().startObject()
+                            .field("notation", "Page " + (i / 2))
+                            .field("group", i % 2 == 0 ? "even" : "odd")
+                            .endObject()).execute().actionGet();
+            if (++n % 7 == 0) {
+                // more than one segment per shard
+                client.admin().indices().prepareRefresh("scroll").execute().actionGet();
+            }
+        }
+        // a key shared by many documents
+        for (int i = 0; i < NUM_UNTITLED; i++) {
+            client.prepareIndex("scroll", "type1", "u" + i)
+                    .setSource(jsonBuilder().startObject()
+                            .field("notation", "Untitled")
+                            .field("group", "other")
+                            .endObject()).execute().actionGet();
+        }
+        // documents without a key
+        for (int i = 0; i < NUM_MISSING; i++) {
+            client.prepareIndex("scroll", "type1", "m" + i)
+                    .setSource(jsonBuilder().startObject()
+                            .field("group", "other")
+                            .endObject()).execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh("scroll").execute().actionGet();
+    }
+
+    @Test
+    public void testScroll() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            expected.add(Integer.toString(i));
+        }
+        List<String> untitled = new ArrayList<>();
+        for (int i = 0; i < NUM_UNTITLED; i++) {
+            untitled.add("u" + i);
+        }
+        // equal keys are ordered by uid
+        Collections.sort(untitled);
+        expected.addAll(untitled);
+        for (int i = 0; i < NUM_MISSING; i++) {
+            expected.add("m" + i);
+        }
+        // small pages walk the uids of the shared key, larger pages read the uid of each document
+        for (int size : new int[]{1, 4, 7}) {
+            List<NaturalSortScrollHit> hits = scrollAll(size, null);
+            List<String> ids = new ArrayList<>();
+            for (NaturalSortScrollHit hit : hits) {
+                ids.add(hit.getId());
+            }
+            assertThat(ids, equalTo(expected));
+            for (int i = 0; i < NUM_DOCS; i++) {
+                assertThat(notation(hits.get(i)), equalTo("Page " + (i / 2)));
+            }
+            for (int i = NUM_DOCS + NUM_UNTITLED; i < hits.size(); i++) {
+                assertThat(hits.get(i).getKey(), nullValue());
+            }
+        }
+    }
+
+    @Test
+    public void testScrollWithQuery() throws Exception {
+        List<NaturalSortScrollHit> hits = scrollAll(4, QueryBuilders.termQuery("group", "even"));
+        assertThat(hits.size(), equalTo(NUM_DOCS / 2));
+        for (int i = 0; i < hits.size(); i++) {
+            assertThat(notation(hits.get(i)), equalTo("Page " + i));
+            assertThat(hits.get(i).getId(), equalTo(Integer.toString(i * 2)));
+        }
+    }
+
+    @Test
+    public void testExhaustedShardsAreSkipped() throws Exception {
+        int total = NUM_DOCS + NUM_UNTITLED + NUM_MISSING;
+        NaturalSortScrollResponse response = NaturalSortScrollAction.INSTANCE.newRequestBuilder(client)
+                .setIndices("scroll")
+                .setField("notation.sort")
+                .setSize(total + 1)
+                .execute().actionGet();
+        assertThat(response.getHits().size(), equalTo(total));
+        assertThat(response.getTotalShards(), equalTo(3));
+        NaturalSortScrollResponse next = NaturalSortScrollAction.INSTANCE.newRequestBuilder(client)
+                .setIndices("scroll")
+                .setField("notation.sort")
+                .setSize(total + 1)
+                .setCursor(response.getCursor())
+                .execute().actionGet();
+        assertThat(next.getHits().size(), equalTo(0));
+        assertThat(next.getTotalShards(), equalTo(0));
+    }
+
+    private List<NaturalSortScrollHit> scrollAll(int size, QueryBuilder query) {
+        List<NaturalSortScrollHit> hits = new ArrayList<>();
+        String cursor = null;
+        while (true) {
+            NaturalSortScrollResponse response = NaturalSortScrollAction.INSTANCE.newRequestBuilder(client)
+                    .setIndices("scroll")
+                    .setField("notation.sort")
+                    .setSize(size)
+                    .setQuery(query)
+                    .setCursor(cursor)
+                    .execute().actionGet();
+            assertThat(response.getFailedShards(), equalTo(0));
+            assertThat(response.getHits().size(), lessThanOrEqualTo(size));
+            if (response.getHits().isEmpty()) {
+                return hits;
+            }
+            hits.addAll(response.getHits());
+            cursor = response.getCursor();
+        }
+    }
+
+    private static String notation(NaturalSortScrollHit hit) {
+        return (String) XContentMapValues.extractValue("notation", XContentHelper.convertToMap(hit.getSource(), false).v2());
+    }
+}